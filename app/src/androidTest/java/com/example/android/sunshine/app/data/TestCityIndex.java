@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+public class TestCityIndex extends AndroidTestCase {
+
+    // id, name, country, latitude, longitude; listed in the order of their keys, as the
+    // buildCityIndex task sorts them
+    private static final Object[][] CITIES = {
+            {2643743, "London", "GB", 51.5085f, -0.1257f},
+            {6058560, "London", "CA", 42.9834f, -81.2330f},
+            {2643736, "Londonderry", "GB", 54.9981f, -7.3093f},
+            {2988507, "Paris", "FR", 48.8534f, 2.3488f},
+            {3448439, "S\u00e3o Paulo", "BR", -23.5475f, -46.6361f},
+    };
+
+    private CityIndex mCityIndex;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCityIndex = new CityIndex(buildIndex());
+    }
+
+    /*
+        Writes the cities in the layout of the cities.idx asset.
+     */
+    private static ByteBuffer buildIndex() throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream recordsOut = new DataOutputStream(records);
+        int[] offsets = new int[CITIES.length];
+        int base = 12 + 4 * CITIES.length;
+        for (int i = 0; i < CITIES.length; i++) {
+            offsets[i] = base + recordsOut.size();
+            String name = (String) CITIES[i][1];
+            writeString(recordsOut, CityIndex.normalize(name));
+            writeString(recordsOut, name);
+            writeString(recordsOut, (String) CITIES[i][2]);
+            recordsOut.writeInt((Integer) CITIES[i][0]);
+            recordsOut.writeFloat((Float) CITIES[i][3]);
+            recordsOut.writeFloat((Float) CITIES[i][4]);
+        }
+
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        DataOutputStream indexOut = new DataOutputStream(index);
+        indexOut.writeInt(0x43495459);
+        indexOut.writeInt(1);
+        indexOut.writeInt(CITIES.length);
+        for (int offset : offsets) {
+            indexOut.writeInt(offset);
+        }
+        records.writeTo(indexOut);
+        return ByteBuffer.wrap(index.toByteArray());
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes("UTF-8");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    public void testSearch() {
+        List<CityIndex.City> cities = mCityIndex.search("Lon", 10);
+        assertEquals("Error: Wrong number of cities for a prefix", 3, cities.size());
+        assertEquals("Error: Cities should come in key order",
+                "London,GB", cities.get(0).toString());
+        assertEquals("Error: Cities should come in key order",
+                "Londonderry,GB", cities.get(2).toString());
+
+        assertEquals("Error: The limit wasn't respected", 2, mCityIndex.search("lon", 2).size());
+        assertEquals("Error: A search should ignore case and accents",
+                3448439, mCityIndex.search("SAO P", 10).get(0).id);
+        assertTrue("Error: A prefix of no city found cities",
+                mCityIndex.search("Atl", 10).isEmpty());
+        assertTrue("Error: An empty prefix found cities", mCityIndex.search(" ", 10).isEmpty());
+    }
+
+    public void testResolve() {
+        assertNull("Error: A name several cities share should not resolve",
+                mCityIndex.resolve("London"));
+
+        CityIndex.City city = mCityIndex.resolve("London,CA");
+        assertNotNull("Error: The country should pick one of the cities", city);
+        assertEquals("Error: The country filter picked the wrong city", 6058560, city.id);
+        assertEquals("Error: The country filter should ignore case and spaces",
+                2643743, mCityIndex.resolve("london, gb").id);
+
+        city = mCityIndex.resolve("Sao Paulo");
+        assertNotNull("Error: A unique name should resolve", city);
+        assertEquals("Error: The city's name should be the one with accents",
+                "S\u00e3o Paulo", city.name);
+        assertEquals(-23.5475f, city.latitude);
+        assertEquals(-46.6361f, city.longitude);
+
+        assertNull("Error: A city of another country resolved", mCityIndex.resolve("Paris,GB"));
+        assertNull("Error: A prefix resolved", mCityIndex.resolve("Lond"));
+        assertNull("Error: An unknown name resolved", mCityIndex.resolve("Atlantis"));
+    }
+
+    public void testIsUnknownName() {
+        assertTrue("Error: An unknown name was found", mCityIndex.isUnknownName("Atlantis"));
+        assertTrue("Error: A prefix counted as a name", mCityIndex.isUnknownName("Lond"));
+        assertFalse("Error: A name in another case and without accents wasn't found",
+                mCityIndex.isUnknownName("sao paulo"));
+        assertFalse("Error: The country should not make a known name unknown",
+                mCityIndex.isUnknownName("Paris,GB"));
+        assertFalse("Error: Postal codes aren't covered by the index",
+                mCityIndex.isUnknownName("94043"));
+    }
+
+    public void testRejectsOtherFiles() {
+        try {
+            new CityIndex(ByteBuffer.wrap(new byte[16]));
+            fail("Error: A buffer without the magic number was accepted");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
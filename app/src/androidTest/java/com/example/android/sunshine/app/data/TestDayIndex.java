@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+public class TestDayIndex extends AndroidTestCase {
+
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        DayIndex.invalidate();
+    }
+
+    /*
+        This test walks a year either side of today, a few hours at a time, so that it crosses
+        the daylight saving changes of the device's time zone, and compares DayIndex with Time.
+     */
+    public void testMatchesTime() {
+        Time time = new Time();
+        long now = System.currentTimeMillis();
+        for (long millis = now - 366 * 24 * HOUR_IN_MILLIS; millis < now + 366 * 24 * HOUR_IN_MILLIS;
+                millis += 5 * HOUR_IN_MILLIS) {
+            time.set(millis);
+            int julianDay = Time.getJulianDay(millis, time.gmtoff);
+            assertEquals("Error: Wrong day for " + millis, julianDay, DayIndex.getDayIndex(millis));
+            assertEquals("Error: Wrong start of day " + julianDay,
+                    time.setJulianDay(julianDay), DayIndex.getStartOfDay(julianDay));
+        }
+    }
+
+    public void testToday() {
+        Time time = new Time();
+        time.setToNow();
+        assertEquals(Time.getJulianDay(System.currentTimeMillis(), time.gmtoff),
+                DayIndex.getToday());
+    }
+}
@@ -55,6 +55,9 @@ public class TestDb extends AndroidTestCase {
         final HashSet<String> tableNameHashSet = new HashSet<String>();
         tableNameHashSet.add(WeatherContract.LocationEntry.TABLE_NAME);
         tableNameHashSet.add(WeatherContract.WeatherEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.ArchiveEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.AggregateEntry.TABLE_NAME);
+        tableNameHashSet.add(WeatherContract.SyncJournalEntry.TABLE_NAME);
 
         mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
         SQLiteDatabase db = new WeatherDbHelper(
@@ -91,6 +94,13 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LAST_SYNCED);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_EXPIRES_AT);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_RETENTION_DAYS);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_HISTORY_DAYS);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_BUCKET);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
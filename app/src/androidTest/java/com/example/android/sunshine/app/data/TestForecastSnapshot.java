@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final String[] PROJECTION = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_COORD_LAT
+    };
+
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastSnapshot.delete(mContext);
+        mToday = DayIndex.getStartOfDay(DayIndex.getToday());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshot.delete(mContext);
+        super.tearDown();
+    }
+
+    private ContentValues[] createDays(int count) {
+        ContentValues[] days = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            days[i] = TestUtilities.createWeatherValues(1);
+            days[i].put(WeatherEntry.COLUMN_DATE, DayIndex.getStartOfDay(DayIndex.getToday() + i));
+            days[i].put(WeatherEntry.COLUMN_MAX_TEMP, 20.5 + i);
+        }
+        return days;
+    }
+
+    public void testReadsWhatWasWritten() {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION, 64.7488, -147.353,
+                createDays(3));
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: The snapshot couldn't be read back", snapshot);
+
+        Cursor cursor = snapshot.query(PROJECTION, mToday);
+        assertNotNull("Error: The snapshot should have all the columns", cursor);
+        assertEquals(3, cursor.getCount());
+        for (int i = 0; cursor.moveToNext(); i++) {
+            assertEquals(DayIndex.getStartOfDay(DayIndex.getToday() + i), cursor.getLong(1));
+            assertEquals("Asteroids", cursor.getString(2));
+            assertEquals(20.5 + i, cursor.getDouble(3));
+            assertEquals(321, cursor.getInt(4));
+            assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(5));
+            assertEquals(64.7488, cursor.getDouble(6));
+        }
+        cursor.close();
+    }
+
+    public void testSkipsDaysBeforeStart() {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION, 0, 0, createDays(3));
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mContext, TestUtilities.TEST_LOCATION);
+        Cursor cursor = snapshot.query(PROJECTION,
+                DayIndex.getStartOfDay(DayIndex.getToday() + 1));
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testOtherLocationIsIgnored() {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION, 0, 0, createDays(1));
+        assertNull("Error: The snapshot was read for another location",
+                ForecastSnapshot.read(mContext, "94043"));
+    }
+
+    public void testUnknownColumnIsRejected() {
+        ForecastSnapshot.write(mContext, TestUtilities.TEST_LOCATION, 0, 0, createDays(1));
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mContext, TestUtilities.TEST_LOCATION);
+        assertNull("Error: The snapshot made up a column it doesn't have",
+                snapshot.query(new String[]{LocationEntry.COLUMN_CITY_NAME}, mToday));
+    }
+
+    public void testMissingFile() {
+        assertNull(ForecastSnapshot.read(mContext, TestUtilities.TEST_LOCATION));
+    }
+}
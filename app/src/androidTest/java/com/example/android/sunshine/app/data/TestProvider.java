@@ -25,8 +25,10 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
 import android.test.AndroidTestCase;
+import android.text.format.Time;
 import android.util.Log;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -393,6 +395,222 @@ public class TestProvider extends AndroidTestCase {
                 weatherCursor, weatherValues);
     }
 
+    /*
+        This test upserts the same location twice and makes sure that only one row is stored and
+        that both calls agree on its id.  It then deletes the location to make sure the provider
+        forgets the cached id.
+     */
+    public void testUpsertLocation() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+
+        Uri firstUri = mContext.getContentResolver().insert(
+                LocationEntry.buildLocationUpsertUri(), testValues);
+        Uri secondUri = mContext.getContentResolver().insert(
+                LocationEntry.buildLocationUpsertUri(), testValues);
+        long locationRowId = ContentUris.parseId(firstUri);
+        assertTrue(locationRowId != -1);
+        assertEquals("Error: Upserting an existing location returned a different row",
+                locationRowId, ContentUris.parseId(secondUri));
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertEquals("Error: Upserting an existing location added a row", 1, cursor.getCount());
+        cursor.close();
+
+        deleteAllRecordsFromProvider();
+
+        Uri thirdUri = mContext.getContentResolver().insert(
+                LocationEntry.buildLocationUpsertUri(), testValues);
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI, null, null, null, null);
+        assertTrue("Error: Upsert after delete returned a stale cached row", cursor.moveToFirst());
+        assertEquals(cursor.getLong(cursor.getColumnIndex(LocationEntry._ID)),
+                ContentUris.parseId(thirdUri));
+        cursor.close();
+    }
+
+    /*
+        This test stores a week of past forecasts for a location that keeps two days of them,
+        and makes sure the maintenance uri deletes exactly the older ones.
+     */
+    public void testRetention() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues retentionValues = new ContentValues();
+        retentionValues.put(LocationEntry.COLUMN_RETENTION_DAYS, 2);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, retentionValues,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(locationRowId)});
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianToday = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        ContentValues[] weatherValues = new ContentValues[7];
+        for (int i = 0; i < weatherValues.length; i++) {
+            weatherValues[i] = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues[i].put(WeatherEntry.COLUMN_DATE, dayTime.setJulianDay(julianToday - i));
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        int rowsDeleted = mContext.getContentResolver().delete(
+                WeatherContract.MaintenanceEntry.CONTENT_URI, null, null);
+        assertEquals("Error: Retention deleted the wrong number of rows", 4, rowsDeleted);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals("Error: Retention kept the wrong number of rows", 3, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Retention kept a row older than the horizon",
+                dayTime.setJulianDay(julianToday - 2), cursor.getLong(0));
+        cursor.close();
+    }
+
+    /*
+        This test stores one more location than the maintenance uri keeps, each with a day of
+        weather, and makes sure the least recently accessed one goes, along with its weather.
+     */
+    public void testLocationEviction() {
+        long oldestRowId = -1;
+        for (int i = 0; i <= WeatherProvider.MAX_CACHED_LOCATIONS; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "location" + i);
+            // The first location is the least recently accessed
+            locationValues.put(LocationEntry.COLUMN_LAST_ACCESSED, 1000L + i);
+            long locationRowId = ContentUris.parseId(mContext.getContentResolver().insert(
+                    LocationEntry.CONTENT_URI, locationValues));
+            if (i == 0) {
+                oldestRowId = locationRowId;
+            }
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+        }
+
+        int rowsDeleted = mContext.getContentResolver().delete(
+                WeatherContract.MaintenanceEntry.CONTENT_URI, null, null);
+        assertEquals("Error: Eviction deleted the wrong number of weather rows", 1, rowsDeleted);
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, LocationEntry._ID + " = ?", new String[]{Long.toString(oldestRowId)}, null);
+        assertEquals("Error: The least recently accessed location was kept", 0, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Eviction kept the wrong number of locations",
+                WeatherProvider.MAX_CACHED_LOCATIONS, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test stores two locations a few kilometres apart and a third one far away, and makes
+        sure the nearest uri finds the closest within its radius, and nothing outside of it.
+     */
+    public void testNearestLocation() {
+        double[][] coords = {{51.5074, -0.1278}, {51.4545, -0.0170}, {48.8566, 2.3522}};
+        for (int i = 0; i < coords.length; i++) {
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "location" + i);
+            locationValues.put(LocationEntry.COLUMN_COORD_LAT, coords[i][0]);
+            locationValues.put(LocationEntry.COLUMN_COORD_LONG, coords[i][1]);
+            mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues);
+        }
+
+        String[] projection = new String[]{LocationEntry.COLUMN_LOCATION_SETTING};
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(51.51, -0.12, 10), projection,
+                null, null, null);
+        assertTrue("Error: No location found within the radius", cursor.moveToFirst());
+        assertEquals("Error: The nearest location wasn't the closest one",
+                "location0", cursor.getString(0));
+        cursor.close();
+
+        // Closer to the second location, in the next grid cell to the east
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(51.46, 0.01, 10), projection,
+                null, null, null);
+        assertTrue("Error: No location found across a bucket boundary", cursor.moveToFirst());
+        assertEquals("Error: The nearest location wasn't the closest one",
+                "location1", cursor.getString(0));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                LocationEntry.buildNearestLocationUri(50.0, 1.0, 10), projection,
+                null, null, null);
+        assertEquals("Error: A location outside the radius was found", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        This test bulk inserts ten days of weather, which all fall into the same month, and
+        checks the monthly rollup against them.  It then replaces one day and makes sure the
+        rollup follows.
+     */
+    public void testAggregates() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        Uri monthlyUri = AggregateEntry.buildAggregateUri(
+                TestUtilities.TEST_LOCATION, AggregateEntry.PERIOD_MONTH);
+        Cursor cursor = mContext.getContentResolver().query(monthlyUri, null, null, null, null);
+        assertEquals("Error: Ten consecutive days should make up one month", 1, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAY_COUNT)));
+        assertEquals(65.0 - (BULK_INSERT_RECORDS_TO_INSERT - 1),
+                cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MIN_TEMP)));
+        assertEquals(75.0 + (BULK_INSERT_RECORDS_TO_INSERT - 1),
+                cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MAX_TEMP)));
+        assertEquals(70.0, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_AVG_TEMP)));
+        assertEquals("Error: Drizzle wasn't counted as a rainy day", BULK_INSERT_RECORDS_TO_INSERT,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_RAIN_DAYS)));
+        assertEquals(321,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DOMINANT_WEATHER_ID)));
+        cursor.close();
+
+        // Replace the first day with a clear one that's colder than the rest
+        ContentValues replacedDay = new ContentValues(bulkInsertContentValues[0]);
+        replacedDay.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        replacedDay.put(WeatherEntry.COLUMN_MIN_TEMP, 10);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{replacedDay});
+
+        cursor = mContext.getContentResolver().query(monthlyUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Replacing a day added a day to the rollup", BULK_INSERT_RECORDS_TO_INSERT,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_DAY_COUNT)));
+        assertEquals(10.0, cursor.getDouble(cursor.getColumnIndex(AggregateEntry.COLUMN_MIN_TEMP)));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1,
+                cursor.getInt(cursor.getColumnIndex(AggregateEntry.COLUMN_RAIN_DAYS)));
+        cursor.close();
+    }
+
+    /*
+        This test makes sure the freshness uri reports a location as stale until its expiry
+        time is moved into the future.
+     */
+    public void testLocationFreshness() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        Uri freshnessUri = LocationEntry.buildLocationFreshnessUri(TestUtilities.TEST_LOCATION);
+
+        Cursor cursor = mContext.getContentResolver().query(freshnessUri, null, null, null, null);
+        assertTrue("Error: No freshness returned for a stored location", cursor.moveToFirst());
+        assertEquals("Error: A location that was never synced was reported fresh", 0,
+                cursor.getInt(cursor.getColumnIndex(LocationEntry.COLUMN_IS_FRESH)));
+        cursor.close();
+
+        ContentValues freshnessValues = new ContentValues();
+        freshnessValues.put(LocationEntry.COLUMN_LAST_SYNCED, System.currentTimeMillis());
+        freshnessValues.put(LocationEntry.COLUMN_EXPIRES_AT, System.currentTimeMillis() + 60000);
+        mContext.getContentResolver().update(LocationEntry.CONTENT_URI, freshnessValues,
+                LocationEntry._ID + " = ?", new String[]{Long.toString(locationRowId)});
+
+        cursor = mContext.getContentResolver().query(freshnessUri, null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: A location with a future expiry was reported stale", 1,
+                cursor.getInt(cursor.getColumnIndex(LocationEntry.COLUMN_IS_FRESH)));
+        cursor.close();
+    }
+
     // Make sure we can still delete after adding/updating stuff
     //
     // Student: Uncomment this test after you have completed writing the delete functionality
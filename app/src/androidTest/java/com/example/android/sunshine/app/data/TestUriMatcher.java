@@ -36,6 +36,18 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/location/upsert"
+    private static final Uri TEST_LOCATION_UPSERT = WeatherContract.LocationEntry.buildLocationUpsertUri();
+    private static final Uri TEST_LOCATION_NEAREST = WeatherContract.LocationEntry.buildNearestLocationUri(51.5, -0.12, 10);
+    // content://com.example.android.sunshine.app/freshness/London%2C%20UK"
+    private static final Uri TEST_FRESHNESS_WITH_LOCATION = WeatherContract.LocationEntry.buildLocationFreshnessUri(LOCATION_QUERY);
+    // content://com.example.android.sunshine.app/sync_journal"
+    private static final Uri TEST_SYNC_JOURNAL_DIR = WeatherContract.SyncJournalEntry.CONTENT_URI;
+    // content://com.example.android.sunshine.app/maintenance/compact"
+    private static final Uri TEST_MAINTENANCE_COMPACT = WeatherContract.MaintenanceEntry.buildCompactUri();
+    // content://com.example.android.sunshine.app/aggregate/London%2C%20UK/month"
+    private static final Uri TEST_AGGREGATE_WITH_LOCATION_AND_PERIOD = WeatherContract.AggregateEntry.buildAggregateUri(
+            LOCATION_QUERY, WeatherContract.AggregateEntry.PERIOD_MONTH);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +65,18 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION UPSERT URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_UPSERT), WeatherProvider.LOCATION_UPSERT);
+        assertEquals("Error: The LOCATION NEAREST URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAREST), WeatherProvider.LOCATION_NEAREST);
+        assertEquals("Error: The FRESHNESS WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_FRESHNESS_WITH_LOCATION), WeatherProvider.FRESHNESS_WITH_LOCATION);
+        assertEquals("Error: The SYNC JOURNAL URI was matched incorrectly.",
+                testMatcher.match(TEST_SYNC_JOURNAL_DIR), WeatherProvider.SYNC_JOURNAL);
+        assertEquals("Error: The MAINTENANCE COMPACT URI was matched incorrectly.",
+                testMatcher.match(TEST_MAINTENANCE_COMPACT), WeatherProvider.MAINTENANCE_COMPACT);
+        assertEquals("Error: The AGGREGATE WITH LOCATION AND PERIOD URI was matched incorrectly.",
+                testMatcher.match(TEST_AGGREGATE_WITH_LOCATION_AND_PERIOD),
+                WeatherProvider.AGGREGATE_WITH_LOCATION_AND_PERIOD);
     }
 }
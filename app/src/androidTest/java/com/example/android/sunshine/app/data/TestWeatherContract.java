@@ -42,4 +42,27 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testCanonicalizeLocationSetting() {
+        String key = WeatherContract.LocationEntry.canonicalizeLocationSetting("london,gb");
+        assertEquals("Error: A canonical location setting should stay the same",
+                key, WeatherContract.LocationEntry.canonicalizeLocationSetting(key));
+        assertEquals("Error: Case and spacing should not change the location key",
+                key, WeatherContract.LocationEntry.canonicalizeLocationSetting(" London ,  GB"));
+        assertEquals("Error: UK should be read as the country code GB",
+                key, WeatherContract.LocationEntry.canonicalizeLocationSetting("London,UK"));
+        assertEquals("Error: Accents should not change the location key",
+                "sao paulo", WeatherContract.LocationEntry.canonicalizeLocationSetting("S\u00e3o  Paulo"));
+    }
+
+    public void testCoordBucket() {
+        int bucket = WeatherContract.LocationEntry.getCoordBucket(51.5, -0.12);
+        assertEquals("Error: Points of the same grid cell should share a bucket",
+                bucket, WeatherContract.LocationEntry.getCoordBucket(51.51, -0.01));
+        assertEquals("Error: The next cell to the east should be the next bucket",
+                bucket + 1, WeatherContract.LocationEntry.getCoordBucket(51.5, 0.01));
+        assertEquals("Error: The next cell to the north should be a row of buckets further",
+                bucket + WeatherContract.LocationEntry.COORD_BUCKET_COLUMNS,
+                WeatherContract.LocationEntry.getCoordBucket(51.76, -0.12));
+    }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestSyncJournal extends AndroidTestCase {
+
+    private static final String TEST_LOCATION = "99705";
+
+    // A one day forecast in the format of the server's response
+    private static final String TEST_PAYLOAD = "{\"cod\":\"200\","
+            + "\"city\":{\"name\":\"North Pole\",\"coord\":{\"lat\":64.7488,\"lon\":-147.353}},"
+            + "\"list\":[{\"pressure\":1024.5,\"humidity\":80,\"speed\":1.2,\"deg\":180,"
+            + "\"weather\":[{\"id\":800,\"main\":\"Clear\"}],"
+            + "\"temp\":{\"max\":-10.5,\"min\":-20.1}}]}";
+
+    private SunshineSyncAdapter mSyncAdapter;
+
+    // Each test starts without any weather, locations or sync runs
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(SyncJournalEntry.CONTENT_URI, null, null);
+        mSyncAdapter = new SunshineSyncAdapter(mContext, false);
+    }
+
+    private int getWeatherCount() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    /*
+        This test stages a response the way ForecastPrefetcher does, and makes sure the next sync
+        commits it without fetching again.
+     */
+    public void testResumeCommitsFetchedRun() {
+        SyncJournal.recordFetched(mContext, TEST_LOCATION, TEST_PAYLOAD);
+
+        assertTrue("Error: A staged response wasn't committed",
+                mSyncAdapter.resumeInterruptedSync(TEST_LOCATION));
+        assertEquals("Error: The staged forecast wasn't written to the weather table",
+                1, getWeatherCount());
+
+        SyncJournal.Run run = SyncJournal.getLastRun(mContext, TEST_LOCATION);
+        assertNotNull("Error: The committed run was forgotten", run);
+        assertTrue("Error: The run didn't move on from the fetched phase",
+                run.phase != SyncJournalEntry.PHASE_FETCHED);
+        assertNull("Error: The payload was kept after being committed", run.payload);
+    }
+
+    /*
+        This test makes sure a response fetched longer ago than a forecast stays fresh is thrown
+        away instead of being committed as if it were new.
+     */
+    public void testResumeDiscardsOutdatedRun() {
+        SyncJournal.recordFetched(mContext, TEST_LOCATION, TEST_PAYLOAD);
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_UPDATED,
+                System.currentTimeMillis() - SunshineSyncAdapter.FRESHNESS_MILLIS - 1000);
+        mContext.getContentResolver().update(SyncJournalEntry.CONTENT_URI, values,
+                SyncJournalEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{TEST_LOCATION});
+
+        assertFalse("Error: An outdated response was committed",
+                mSyncAdapter.resumeInterruptedSync(TEST_LOCATION));
+        assertEquals("Error: An outdated response was written to the weather table",
+                0, getWeatherCount());
+        assertNull("Error: The outdated run wasn't discarded",
+                SyncJournal.getLastRun(mContext, TEST_LOCATION));
+    }
+
+    /*
+        This test makes sure a prefetched response is only discarded while it is the one the
+        journal holds, and hasn't been committed yet.
+     */
+    public void testDiscardFetched() {
+        SyncJournal.recordFetched(mContext, TEST_LOCATION, TEST_PAYLOAD);
+
+        SyncJournal.discardFetched(mContext, TEST_LOCATION, SyncJournal.hashPayload("{}"));
+        assertNotNull("Error: A run with another payload was discarded",
+                SyncJournal.getLastRun(mContext, TEST_LOCATION));
+
+        SyncJournal.discardFetched(mContext, TEST_LOCATION, SyncJournal.hashPayload(TEST_PAYLOAD));
+        assertNull("Error: The fetched run wasn't discarded",
+                SyncJournal.getLastRun(mContext, TEST_LOCATION));
+
+        SyncJournal.recordFetched(mContext, TEST_LOCATION, TEST_PAYLOAD);
+        SyncJournal.recordCommitted(mContext, TEST_LOCATION);
+        SyncJournal.discardFetched(mContext, TEST_LOCATION, SyncJournal.hashPayload(TEST_PAYLOAD));
+        SyncJournal.Run run = SyncJournal.getLastRun(mContext, TEST_LOCATION);
+        assertNotNull("Error: A committed run was discarded", run);
+        assertEquals(SyncJournalEntry.PHASE_COMMITTED, run.phase);
+    }
+}
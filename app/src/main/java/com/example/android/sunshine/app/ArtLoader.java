@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+
+/**
+ * Builds the Glide requests for weather art, so that every view asking for the same art at the
+ * same size makes the same request.  Glide keys its memory cache on the url, the size and the
+ * transformation, so the list, its preloader and the detail view share decoded art as long as
+ * they go through here.
+ * <p>
+ * Art is decoded at the size of the view showing it: {@link #getIconSize} for the list rows and
+ * {@link #getArtSize} for today's row and the detail view.
+ */
+final class ArtLoader {
+
+    private ArtLoader() {
+    }
+
+    /**
+     * @return the size, in pixels, of the icons of the forecast list
+     */
+    static int getIconSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * @return the size, in pixels, of the art of today's row and of the detail view
+     */
+    static int getArtSize(Context context) {
+        return context.getResources().getDimensionPixelSize(R.dimen.today_icon);
+    }
+
+    /**
+     * @param size the width and height to decode the art at
+     * @return a request for the art, fitted into a square of the given size
+     */
+    static DrawableRequestBuilder<String> request(RequestManager glide, String artUrl, int size) {
+        // Set the transformation ourselves, as into(ImageView) would otherwise pick one from
+        // the view's scale type and requests without a view would end up with another key
+        return glide.load(artUrl)
+                .override(size, size)
+                .fitCenter()
+                .diskCacheStrategy(DiskCacheStrategy.ALL);
+    }
+
+    /**
+     * Loads the art into the view, showing the error resource if it can't be loaded.
+     */
+    static void load(RequestManager glide, String artUrl, int size, int errorResource,
+                     ImageView view) {
+        request(glide, artUrl, size)
+                .error(errorResource)
+                .crossFade()
+                .into(view);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+/**
+ * Loads the art of the forecast rows that are about to scroll into view, in the direction the
+ * list is scrolling, so that it is in Glide's memory cache by the time the rows are bound.
+ */
+class ArtPreloader extends RecyclerView.OnScrollListener {
+    // How many rows past the visible ones to preload
+    private static final int PRELOAD_ROWS = 5;
+
+    private final RequestManager mGlide;
+    private final ForecastAdapter mAdapter;
+    private final LinearLayoutManager mLayoutManager;
+
+    // The most recent preloads, which are cleared as they are replaced so that their art can
+    // move from the active resources into the memory cache
+    private final SimpleTarget[] mTargets = new SimpleTarget[PRELOAD_ROWS];
+    private int mNextTarget;
+
+    // The range of positions already preloaded, end exclusive
+    private int mPreloadedStart;
+    private int mPreloadedEnd;
+
+    ArtPreloader(RequestManager glide, ForecastAdapter adapter, LinearLayoutManager layoutManager) {
+        mGlide = glide;
+        mAdapter = adapter;
+        mLayoutManager = layoutManager;
+    }
+
+    /**
+     * Forgets what has been preloaded, for when the rows have changed.
+     */
+    void reset() {
+        mPreloadedStart = 0;
+        mPreloadedEnd = 0;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy > 0) {
+            int last = mLayoutManager.findLastVisibleItemPosition();
+            if (last != RecyclerView.NO_POSITION) {
+                preload(last + 1, last + 1 + PRELOAD_ROWS);
+            }
+        } else if (dy < 0) {
+            int first = mLayoutManager.findFirstVisibleItemPosition();
+            if (first != RecyclerView.NO_POSITION) {
+                preload(first - PRELOAD_ROWS, first);
+            }
+        }
+    }
+
+    private void preload(int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, mAdapter.getItemCount());
+        for (int position = start; position < end; position++) {
+            if (position < mPreloadedStart || position >= mPreloadedEnd) {
+                preload(position);
+            }
+        }
+        mPreloadedStart = start;
+        mPreloadedEnd = end;
+    }
+
+    private void preload(int position) {
+        ForecastRow row = mAdapter.getRow(position);
+        if (null == row.artUrl) {
+            return;
+        }
+        SimpleTarget previous = mTargets[mNextTarget];
+        if (null != previous) {
+            Glide.clear(previous);
+        }
+        int size = mAdapter.getArtSize(position);
+        SimpleTarget<GlideDrawable> target = new SimpleTarget<GlideDrawable>(size, size) {
+            @Override
+            public void onResourceReady(GlideDrawable resource,
+                                        GlideAnimation<? super GlideDrawable> glideAnimation) {
+                // Nothing to show, the load only warms the cache
+            }
+        };
+        ArtLoader.request(mGlide, row.artUrl, size).into(target);
+        mTargets[mNextTarget] = target;
+        mNextTarget = (mNextTarget + 1) % PRELOAD_ROWS;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.util.SparseArray;
+
+import com.example.android.sunshine.app.data.DayIndex;
+
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Formats the dates shown by the forecast list, the detail view and the widgets.  Formatters are
+ * created once per pattern and locale, and every formatted day is remembered, so binding a row
+ * usually costs a single lookup.
+ * <p>
+ * SimpleDateFormat isn't thread safe and the cache is shared by the UI, sync and widget
+ * threads, so all access is synchronized.  {@link TimeChangedReceiver} clears the cache when the
+ * time zone, date or locale changes.
+ */
+class DateFormatCache {
+
+    // e.g "Mon Jun 3"
+    static final int SHORT_DATE = 0;
+    // e.g "Wednesday"
+    static final int DAY_NAME = 1;
+    // e.g "June 24"
+    static final int MONTH_DAY = 2;
+
+    // these patterns must match the kinds above
+    private static final String[] PATTERNS = new String[]{
+            "EEE MMM dd",
+            "EEEE",
+            "MMMM dd"
+    };
+
+    // A forecast never shows more than a few weeks of days, so a larger cache means the user
+    // has been scrolling through old dates.  It is simply started over.
+    private static final int MAX_CACHED_DAYS = 64;
+
+    // pattern + locale -> formatter
+    private static final HashMap<String, SimpleDateFormat> sFormats =
+            new HashMap<String, SimpleDateFormat>();
+
+    // day index -> formatted day, one array for each kind
+    private static final SparseArray<String>[] sFormattedDays = createFormattedDays();
+
+    private static Locale sLocale;
+
+    @SuppressWarnings("unchecked")
+    private static SparseArray<String>[] createFormattedDays() {
+        SparseArray<String>[] formattedDays = new SparseArray[PATTERNS.length];
+        for (int i = 0; i < formattedDays.length; i++) {
+            formattedDays[i] = new SparseArray<String>();
+        }
+        return formattedDays;
+    }
+
+    private DateFormatCache() {
+    }
+
+    /**
+     * @param kind         one of SHORT_DATE, DAY_NAME or MONTH_DAY
+     * @param dateInMillis the date in milliseconds
+     * @return the date formatted in the current locale and time zone
+     */
+    static synchronized String format(int kind, long dateInMillis) {
+        Locale locale = Locale.getDefault();
+        if (!locale.equals(sLocale)) {
+            invalidate();
+            sLocale = locale;
+        }
+
+        SparseArray<String> formattedDays = sFormattedDays[kind];
+        int dayIndex = DayIndex.getDayIndex(dateInMillis);
+        String formattedDay = formattedDays.get(dayIndex);
+        if (null == formattedDay) {
+            if (formattedDays.size() >= MAX_CACHED_DAYS) {
+                formattedDays.clear();
+            }
+            formattedDay = getFormat(PATTERNS[kind], locale).format(dateInMillis);
+            formattedDays.put(dayIndex, formattedDay);
+        }
+        return formattedDay;
+    }
+
+    private static SimpleDateFormat getFormat(String pattern, Locale locale) {
+        String key = pattern + '|' + locale;
+        SimpleDateFormat format = sFormats.get(key);
+        if (null == format) {
+            format = new SimpleDateFormat(pattern, locale);
+            sFormats.put(key, format);
+        }
+        return format;
+    }
+
+    /**
+     * Drops all formatters, which hold on to the time zone they were created in, and all
+     * formatted days.
+     */
+    static synchronized void invalidate() {
+        sFormats.clear();
+        for (SparseArray<String> formattedDays : sFormattedDays) {
+            formattedDays.clear();
+        }
+    }
+}
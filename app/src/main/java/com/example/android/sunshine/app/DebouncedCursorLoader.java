@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A {@link CursorLoader} that waits for its content to stop changing before it reloads.  A sync
+ * sends several change notifications in quick succession, which would otherwise be as many full
+ * queries; here each change restarts the wait, and only the last one reloads.  Changes that
+ * keep coming still reload every {@link #MAX_WAIT_FACTOR} debounce windows.
+ * <p>
+ * The support library's CursorLoader can't cancel a query that is running.  A query superseded
+ * by a reload runs to the end, and its result is dropped instead of delivered.
+ */
+class DebouncedCursorLoader extends CursorLoader {
+    // Long enough to cover the notifications of one sync, short enough to go unnoticed
+    static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+    // How many debounce windows a change may wait at most, however many changes follow it
+    static final int MAX_WAIT_FACTOR = 4;
+
+    private final long mDebounceMillis;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // When the first change still waiting for the reload came in, or 0 if none is waiting
+    private long mFirstChangeTime;
+    private final Runnable mReload = new Runnable() {
+        @Override
+        public void run() {
+            mFirstChangeTime = 0;
+            DebouncedCursorLoader.super.onContentChanged();
+        }
+    };
+
+    /**
+     * @param debounceMillis how long the content must stay unchanged before reloading; 0 reloads
+     *                       on every change
+     */
+    DebouncedCursorLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder, long debounceMillis) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+        mDebounceMillis = debounceMillis;
+    }
+
+    @Override
+    public void onContentChanged() {
+        if (mDebounceMillis <= 0) {
+            super.onContentChanged();
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (0 == mFirstChangeTime) {
+            mFirstChangeTime = now;
+        }
+        long deadline = mFirstChangeTime + mDebounceMillis * MAX_WAIT_FACTOR;
+        mHandler.removeCallbacks(mReload);
+        mHandler.postDelayed(mReload, Math.max(0, Math.min(mDebounceMillis, deadline - now)));
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mHandler.removeCallbacks(mReload);
+        mFirstChangeTime = 0;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+/**
+ * Everything the detail view shows for one day: the list's {@link ForecastRow} and the
+ * columns only the detail view has, formatted ahead of time.
+ */
+final class DetailDay {
+    final ForecastRow row;
+
+    final String humidityText;
+    final String humidityA11y;
+    final String windText;
+    final String windA11y;
+    final String pressureText;
+    final String pressureA11y;
+
+    DetailDay(Context context, ForecastRow row, float humidity, float windSpeed,
+              float windDirection, float pressure) {
+        this.row = row;
+        humidityText = Utility.getFormattedHumidity(context, humidity);
+        humidityA11y = context.getString(R.string.a11y_humidity, humidityText);
+        windText = Utility.getFormattedWind(context, windSpeed, windDirection);
+        windA11y = context.getString(R.string.a11y_wind, windText);
+        pressureText = Utility.getFormattedPressure(context, pressure);
+        pressureA11y = context.getString(R.string.a11y_pressure, pressureText);
+    }
+}
@@ -19,14 +19,15 @@ import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.ShareActionProvider;
 import android.support.v7.widget.Toolbar;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -49,12 +50,21 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
     static final String DETAIL_TRANSITION_ANIMATION = "DTA";
+    static final String DETAIL_ROW = "ROW";
 
     private static final String FORECAST_SHARE_HASHTAG = " #SunshineApp";
 
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The list's row for the day, shown until the first load replaces it
+    private ForecastRow mRow;
+    // The last days loaded: the one shown, and the ones either side of it
+    private DetailLoader.Days mDays;
+    // Whether the enter transition has been started
+    private boolean mShown;
+    // When the view was created, to time the start of the transition in debug builds
+    private long mViewCreatedTime;
 
     private static final int DETAIL_LOADER = 0;
 
@@ -111,7 +121,16 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         if (arguments != null) {
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
+            // After a configuration change the loader's data is already there, and is newer
+            if (null == savedInstanceState) {
+                mRow = arguments.getParcelable(DetailFragment.DETAIL_ROW);
+            }
+        }
+        // The pane may have moved on to another day since it was created
+        if (null != savedInstanceState && savedInstanceState.containsKey(DETAIL_URI)) {
+            mUri = savedInstanceState.getParcelable(DETAIL_URI);
         }
+        mViewCreatedTime = SystemClock.uptimeMillis();
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
         mIconView = (ImageView) rootView.findViewById(R.id.detail_icon);
@@ -125,9 +144,23 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+
+        // Everything the list showed for the day can be shown right away
+        if (null != mRow) {
+            bindRow(mRow);
+        }
         return rootView;
     }
 
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        // The arguments only hold the day the fragment was created for
+        if (null != mUri) {
+            outState.putParcelable(DETAIL_URI, mUri);
+        }
+        super.onSaveInstanceState(outState);
+    }
+
     private void finishCreatingMenu(Menu menu) {
         // Retrieve the share menu item
         MenuItem menuItem = menu.findItem(R.id.action_share);
@@ -155,11 +188,23 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     public void onActivityCreated(Bundle savedInstanceState) {
         getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
+        // The list's row has the shared icon, so the transition doesn't need to wait for the
+        // loader
+        if (null != mRow) {
+            ViewParent vp = getView().getParent();
+            if ( vp instanceof CardView ) {
+                ((View)vp).setVisibility(View.VISIBLE);
+            }
+            show();
+        }
     }
 
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
+        // what we have loaded is for the old location
+        mRow = null;
+        mDays = null;
         if (null != uri) {
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
@@ -168,18 +213,44 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         }
     }
 
+    /**
+     * Shows another day, in place.  Used by the two-pane layout, which keeps the detail pane
+     * around while the selection moves through the list.
+     *
+     * @param row the list's row for the day, or null
+     */
+    void showDay(Uri uri, ForecastRow row) {
+        mUri = uri;
+        long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        // Days next to the last one shown are already loaded
+        DetailDay day = null == mDays ? null : mDays.get(date);
+        if (null != day) {
+            bindDay(day);
+        } else if (null != row) {
+            bindRow(row);
+            clearExtras();
+        }
+        if (null != day || null != row) {
+            ViewParent vp = getView().getParent();
+            if ( vp instanceof CardView ) {
+                ((View)vp).setVisibility(View.VISIBLE);
+            }
+            show();
+        }
+        // Refresh the day, and fetch the ones around it
+        getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         if ( null != mUri ) {
-            // Now create and return a CursorLoader that will take care of
+            // Now create and return a loader that will take care of
             // creating a Cursor for the data being displayed.
-            return new CursorLoader(
+            return new DetailLoader(
                     getActivity(),
-                    mUri,
-                    DETAIL_COLUMNS,
-                    null,
-                    null,
-                    null
+                    WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri),
+                    WeatherContract.WeatherEntry.getDateFromUri(mUri),
+                    DETAIL_COLUMNS
             );
         }
         ViewParent vp = getView().getParent();
@@ -191,85 +262,109 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        if (data != null && data.moveToFirst()) {
+        mDays = (DetailLoader.Days) data;
+        DetailDay day = null == mDays || null == mUri
+                ? null : mDays.get(WeatherContract.WeatherEntry.getDateFromUri(mUri));
+        if (null != day) {
             ViewParent vp = getView().getParent();
             if ( vp instanceof CardView ) {
                 ((View)vp).setVisibility(View.VISIBLE);
             }
+            bindDay(day);
+        }
+        show();
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    /**
+     * Shows everything there is for the day.  The strings have all been formatted by the
+     * loader, so this is cheap enough to repeat on every load.
+     */
+    private void bindDay(DetailDay day) {
+        bindRow(day.row);
+
+        mHumidityView.setText(day.humidityText);
+        mHumidityView.setContentDescription(day.humidityA11y);
+        mHumidityLabelView.setContentDescription(day.humidityA11y);
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        mWindView.setText(day.windText);
+        mWindView.setContentDescription(day.windA11y);
+        mWindLabelView.setContentDescription(day.windA11y);
 
+        mPressureView.setText(day.pressureText);
+        mPressureView.setContentDescription(day.pressureA11y);
+        mPressureLabelView.setContentDescription(day.pressureA11y);
+    }
+
+    /**
+     * Blanks the columns the list's rows don't have, for days shown from a row.
+     */
+    private void clearExtras() {
+        mHumidityView.setText(null);
+        mHumidityView.setContentDescription(null);
+        mHumidityLabelView.setContentDescription(null);
+        mWindView.setText(null);
+        mWindView.setContentDescription(null);
+        mWindLabelView.setContentDescription(null);
+        mPressureView.setText(null);
+        mPressureView.setContentDescription(null);
+        mPressureLabelView.setContentDescription(null);
+    }
+
+    /**
+     * Shows the day's art, date, description and temperatures.
+     */
+    private void bindRow(ForecastRow row) {
+        if ( null == row.artUrl ) {
+            mIconView.setImageResource(row.artResource);
+        } else {
+            // Use weather art image
+            // Decoded at the same size as today's row of the list, so the two share it
+            ArtLoader.load(Glide.with(this), row.artUrl, ArtLoader.getArtSize(getActivity()),
+                    row.artResource, mIconView);
         }
+
+        mDateView.setText(row.fullDateText);
+
+        mDescriptionView.setText(row.description);
+        mDescriptionView.setContentDescription(row.descriptionA11y);
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, row.description));
+
+        mHighTempView.setText(row.highText);
+        mHighTempView.setContentDescription(row.highA11y);
+
+        mLowTempView.setText(row.lowText);
+        mLowTempView.setContentDescription(row.lowA11y);
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", row.fullDateText, row.description,
+                row.high, row.low);
+    }
+
+    /**
+     * Starts the enter transition once there is something to show, or updates the toolbar's
+     * menu with what is shown.
+     */
+    private void show() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
         // We need to start the enter transition after the data has loaded
         if ( mTransitionAnimation ) {
+            if ( mShown ) {
+                return;
+            }
+            mShown = true;
             activity.supportStartPostponedEnterTransition();
+            if (BuildConfig.DEBUG) {
+                Log.d(LOG_TAG, "Started the enter transition "
+                        + (SystemClock.uptimeMillis() - mViewCreatedTime)
+                        + "ms after creating the view");
+            }
 
             if ( null != toolbarView ) {
                 activity.setSupportActionBar(toolbarView);
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.support.v4.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.DayIndex;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Loads a day of the forecast for the detail view, along with the days either side of it so
+ * that stepping to them can be shown without waiting.  All of them are formatted on the
+ * loader's background thread.  Delivers a {@link Days}.
+ * <p>
+ * The projection must start with the columns of {@link DetailFragment#DETAIL_COLUMNS}, as the
+ * days are read using its indices.
+ */
+class DetailLoader extends DebouncedCursorLoader {
+    // How many days either side of the selected one to load
+    private static final int ADJACENT_DAYS = 1;
+
+    private final long mLastDate;
+
+    /**
+     * @param date the selected day, as stored in the weather table
+     */
+    DetailLoader(Context context, String locationSetting, long date, String[] projection) {
+        super(context,
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                        DayIndex.getStartOfDay(DayIndex.getDayIndex(date) - ADJACENT_DAYS)),
+                projection,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                DEFAULT_DEBOUNCE_MILLIS);
+        mLastDate = DayIndex.getStartOfDay(DayIndex.getDayIndex(date) + ADJACENT_DAYS);
+    }
+
+    /**
+     * The loaded days, keyed by their date.
+     */
+    static class Days extends CursorWrapper {
+        private final LongSparseArray<DetailDay> mDays;
+
+        Days(Cursor cursor, LongSparseArray<DetailDay> days) {
+            super(cursor);
+            mDays = days;
+        }
+
+        /**
+         * @return the day, or null if it wasn't loaded
+         */
+        DetailDay get(long date) {
+            return mDays.get(date);
+        }
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (null == cursor) {
+            return null;
+        }
+        Context context = getContext();
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        LongSparseArray<DetailDay> days = new LongSparseArray<DetailDay>(2 * ADJACENT_DAYS + 1);
+        // The query runs to the end of the forecast; only the first few days are wanted
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            long date = cursor.getLong(DetailFragment.COL_WEATHER_DATE);
+            if (date > mLastDate) {
+                break;
+            }
+            ForecastRow row = new ForecastRow(context,
+                    date,
+                    cursor.getInt(DetailFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getDouble(DetailFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(DetailFragment.COL_WEATHER_MIN_TEMP),
+                    localGraphics);
+            days.put(date, new DetailDay(context, row,
+                    cursor.getFloat(DetailFragment.COL_WEATHER_HUMIDITY),
+                    cursor.getFloat(DetailFragment.COL_WEATHER_WIND_SPEED),
+                    cursor.getFloat(DetailFragment.COL_WEATHER_DEGREES),
+                    cursor.getFloat(DetailFragment.COL_WEATHER_PRESSURE)));
+        }
+        return new Days(cursor, days);
+    }
+}
@@ -16,7 +16,6 @@
 package com.example.android.sunshine.app;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.v4.view.ViewCompat;
@@ -30,11 +29,11 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * from a {@link ForecastCursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * The rows are formatted by {@link ForecastLoader}, so binding only copies them into views.
  */
 public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -44,11 +43,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
-    private Cursor mCursor;
+    private ForecastCursor mCursor;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    // The sizes art is decoded at, for the list rows and for today's row
+    final private int mIconSize;
+    final private int mArtSize;
 
     /**
      * Cache of the children views for a forecast list item.
@@ -70,12 +72,21 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
             view.setOnClickListener(this);
         }
 
+        /**
+         * @return the row shown by this holder, or null if it is no longer in the adapter
+         */
+        public ForecastRow getRow() {
+            int adapterPosition = getAdapterPosition();
+            if (adapterPosition == RecyclerView.NO_POSITION || null == mCursor) {
+                return null;
+            }
+            return mCursor.getRow(adapterPosition);
+        }
+
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mCursor.getRow(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +99,11 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        mIconSize = ArtLoader.getIconSize(context);
+        mArtSize = ArtLoader.getArtSize(context);
+        // Each day is only listed once, so its date identifies it.  This has to be set before
+        // the ItemChoiceManager starts observing us.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,63 +140,46 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        ForecastRow row = mCursor.getRow(position);
         int defaultImage;
-        boolean useLongToday;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResource;
+                dateText = row.longDateText;
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResource;
+                dateText = row.dateText;
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( null == row.artUrl ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
-                    .crossFade()
-                    .into(forecastAdapterViewHolder.mIconView);
+            ArtLoader.load(Glide.with(mContext), row.artUrl, getArtSize(position), defaultImage,
+                    forecastAdapterViewHolder.mIconView);
         }
 
         // this enables better animations. even if we lose state due to a device rotation,
-        // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        // the animator can use this to re-find the original view.  The date is used rather than
+        // the position, as rows that only move aren't bound again.
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + row.date);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -206,19 +205,53 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    ForecastRow getRow(int position) {
+        return mCursor.getRow(position);
+    }
+
+    /**
+     * @return the size art is decoded at for the row at the position
+     */
+    int getArtSize(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY ? mArtSize : mIconSize;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mCursor.getRow(position).date;
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
         return mCursor.getCount();
     }
 
-    public void swapCursor(Cursor newCursor) {
+    public void swapCursor(ForecastCursor newCursor) {
+        ForecastCursor oldCursor = mCursor;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        ForecastDiff diff = null == newCursor ? null : newCursor.getDiff();
+        if (null != oldCursor && null != diff && diff.appliesTo(oldCursor.getRows())) {
+            diff.dispatchTo(this);
+            // Whichever day ends up first needs the today layout, even if it was already there,
+            // and a day pushed down from the first row needs the future day layout back
+            ForecastRow[] oldRows = oldCursor.getRows();
+            ForecastRow[] newRows = newCursor.getRows();
+            if (mUseTodayLayout && newRows.length > 0
+                    && (oldRows.length == 0 || oldRows[0].date != newRows[0].date)) {
+                notifyItemChanged(0);
+                if (oldRows.length > 0 && newRows.length > 1
+                        && oldRows[0].date == newRows[1].date) {
+                    notifyItemChanged(1);
+                }
+            }
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
-    public Cursor getCursor() {
+    public ForecastCursor getCursor() {
         return mCursor;
     }
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * A forecast cursor along with the {@link ForecastRow}s built from it.  The cursor itself is
+ * still there for the code that reads columns the rows don't carry.
+ */
+class ForecastCursor extends CursorWrapper {
+    private final ForecastRow[] mRows;
+    private final ForecastDiff mDiff;
+
+    /**
+     * @param diff the changes from the previously loaded rows to these, or null if there were
+     *             none loaded
+     */
+    ForecastCursor(Cursor cursor, ForecastRow[] rows, ForecastDiff diff) {
+        super(cursor);
+        mRows = rows;
+        mDiff = diff;
+    }
+
+    /**
+     * @param position a position in the cursor
+     * @return the row for that position
+     */
+    ForecastRow getRow(int position) {
+        return mRows[position];
+    }
+
+    ForecastRow[] getRows() {
+        return mRows;
+    }
+
+    ForecastDiff getDiff() {
+        return mDiff;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The changes that turn one list of {@link ForecastRow}s into another, as adapter
+ * notifications.  Rows are matched by date, so both lists must be sorted by ascending date,
+ * which is the order the forecast is loaded in.
+ */
+final class ForecastDiff {
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_CHANGE = 2;
+
+    // The rows the changes apply to
+    private final ForecastRow[] mOldRows;
+
+    // Runs of the same operation, as (op, position, count) triples in the order they must be
+    // dispatched.  Positions take the earlier runs into account.
+    private final int[] mOps;
+    private final int mOpCount;
+
+    private ForecastDiff(ForecastRow[] oldRows, int[] ops, int opCount) {
+        mOldRows = oldRows;
+        mOps = ops;
+        mOpCount = opCount;
+    }
+
+    /**
+     * Walks both lists once, matching rows by date.
+     *
+     * @param oldRows the rows currently shown
+     * @param newRows the rows to show instead
+     */
+    static ForecastDiff compute(ForecastRow[] oldRows, ForecastRow[] newRows) {
+        // At worst every row opens a run of its own
+        int[] ops = new int[(oldRows.length + newRows.length) * 3];
+        int opCount = 0;
+        int lastOp = -1;
+
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Where the next change lands in the list as it is being transformed
+        int position = 0;
+        while (oldIndex < oldRows.length || newIndex < newRows.length) {
+            int op;
+            if (newIndex == newRows.length
+                    || (oldIndex < oldRows.length && oldRows[oldIndex].date < newRows[newIndex].date)) {
+                op = OP_REMOVE;
+                oldIndex++;
+            } else if (oldIndex == oldRows.length || oldRows[oldIndex].date > newRows[newIndex].date) {
+                op = OP_INSERT;
+                newIndex++;
+            } else {
+                boolean same = oldRows[oldIndex].hasSameContent(newRows[newIndex]);
+                oldIndex++;
+                newIndex++;
+                if (same) {
+                    position++;
+                    lastOp = -1;
+                    continue;
+                }
+                op = OP_CHANGE;
+            }
+
+            if (op == lastOp) {
+                ops[opCount * 3 - 1]++;
+            } else {
+                ops[opCount * 3] = op;
+                ops[opCount * 3 + 1] = position;
+                ops[opCount * 3 + 2] = 1;
+                opCount++;
+                lastOp = op;
+            }
+            // A removed row leaves the next one at the same position
+            if (op != OP_REMOVE) {
+                position++;
+            }
+        }
+        return new ForecastDiff(oldRows, ops, opCount);
+    }
+
+    /**
+     * @return true if the changes were computed against these rows
+     */
+    boolean appliesTo(ForecastRow[] rows) {
+        return mOldRows == rows;
+    }
+
+    /**
+     * Notifies the adapter of each run of changes.  Rows that didn't change aren't mentioned, so
+     * they aren't bound again.
+     */
+    void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOpCount; i++) {
+            int position = mOps[i * 3 + 1];
+            int count = mOps[i * 3 + 2];
+            switch (mOps[i * 3]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
@@ -24,11 +25,11 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -45,6 +46,8 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
@@ -54,11 +57,17 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
+    private ArtPreloader mArtPreloader;
     private RecyclerView mRecyclerView;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // When the view was created, to time the first frame with forecast rows in debug builds
+    private long mViewCreatedTime;
+    private boolean mReportedFullyDrawn;
+    // The forecast read from the snapshot file while the loader's first query runs
+    private ForecastCursor mSnapshotCursor;
 
     private static final String SELECTED_KEY = "selected_position";
 
@@ -122,6 +131,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
         super.onResume();
+        // Coming back to the forecast only fetches it again once the stored one has expired
+        SunshineSyncAdapter.syncIfStaleAsync(getActivity());
     }
 
     @Override
@@ -170,13 +181,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                              Bundle savedInstanceState) {
 
 
+        mViewCreatedTime = SystemClock.uptimeMillis();
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
 
         // Get a reference to the RecyclerView, and attach this adapter to it.
         mRecyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview_forecast);
 
         // Set the layout manager
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        mRecyclerView.setLayoutManager(layoutManager);
         View emptyView = rootView.findViewById(R.id.recyclerview_forecast_empty);
 
         // use this setting to improve performance if you know that changes
@@ -200,6 +213,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Fetch the art of the rows about to scroll into view
+        mArtPreloader = new ArtPreloader(Glide.with(this), mForecastAdapter, layoutManager);
+        mRecyclerView.addOnScrollListener(mArtPreloader);
+
+        if (BuildConfig.DEBUG) {
+            FrameMonitor.watchScrolling(mRecyclerView, LOG_TAG);
+        }
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -259,10 +280,37 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        if (null == getLoaderManager().getLoader(FORECAST_LOADER)) {
+            showSnapshot();
+            // The activity has picked the layout of the first row by now.  Have the rows
+            // inflated while the forecast loads; a retained loader delivers right away.
+            ViewHolderPrefetcher.prefetch(mRecyclerView,
+                    mForecastAdapter.getItemViewType(0), mForecastAdapter.getItemViewType(1));
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    /**
+     * Shows the forecast from the snapshot file the sync writes, which is far quicker to read
+     * than opening the database.  The loader's first result then only updates what changed.
+     */
+    private void showSnapshot() {
+        Context context = getActivity();
+        ForecastSnapshot snapshot = ForecastSnapshot.read(context,
+                Utility.getPreferredLocation(context));
+        if (null == snapshot) {
+            return;
+        }
+        Cursor cursor = snapshot.query(FORECAST_COLUMNS, System.currentTimeMillis());
+        if (null == cursor || cursor.getCount() == 0) {
+            return;
+        }
+        mSnapshotCursor = new ForecastCursor(cursor,
+                ForecastLoader.buildRows(context, cursor), null);
+        mForecastAdapter.swapCursor(mSnapshotCursor);
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
@@ -316,19 +364,24 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        ForecastLoader loader = new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
-                null,
-                null,
                 sortOrder);
+        if (null != mSnapshotCursor) {
+            loader.setShownRows(mSnapshotCursor.getRows());
+            mSnapshotCursor = null;
+        }
+        return loader;
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        mForecastAdapter.swapCursor(data);
+        mForecastAdapter.swapCursor((ForecastCursor) data);
+        mArtPreloader.reset();
         updateEmptyView();
         if ( data.getCount() == 0 ) {
+            reportFullyDrawn();
             getActivity().supportStartPostponedEnterTransition();
         } else {
             mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
@@ -338,15 +391,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        if (BuildConfig.DEBUG && 0 != mViewCreatedTime) {
+                            Log.d(LOG_TAG, "First forecast frame "
+                                    + (SystemClock.uptimeMillis() - mViewCreatedTime)
+                                    + "ms after creating the view");
+                            mViewCreatedTime = 0;
+                        }
+                        reportFullyDrawn();
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
+                            ForecastCursor data = mForecastAdapter.getCursor();
                             int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
                             for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                if ( data.getRow(i).date == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -398,6 +456,21 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         mInitialSelectedDate = initialSelectedDate;
     }
 
+    /**
+     * Tells the system the activity shows the loaded forecast, which closes the launch's time to
+     * full display.  Only the first call of an activity counts, so later loads don't report.
+     */
+    private void reportFullyDrawn() {
+        if (mReportedFullyDrawn) {
+            return;
+        }
+        mReportedFullyDrawn = true;
+        // KitKat requires a permission apps can't hold for this
+        if (Build.VERSION.SDK_INT > Build.VERSION_CODES.KITKAT) {
+            getActivity().reportFullyDrawn();
+        }
+    }
+
     /*
         Updates the empty list view with contextually relevant information that the user can
         use to determine why they aren't seeing weather.
@@ -433,6 +506,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (key.equals(getString(R.string.pref_location_status_key))) {
             updateEmptyView();
+        } else if (key.equals(getString(R.string.pref_location_aliases_key))) {
+            // The sync may have found the location next to one already stored, whose forecast
+            // is shown from now on
+            PreferenceSnapshot.invalidate();
+            onLocationChanged();
         }
     }
 }
\ No newline at end of file
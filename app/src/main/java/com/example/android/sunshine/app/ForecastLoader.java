@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+/**
+ * Loads the forecast list and formats all of its rows on the loader's background thread.
+ * Delivers a {@link ForecastCursor}, along with the changes from the rows it delivered last, so
+ * a reload only rebinds the rows that changed.
+ * <p>
+ * The projection must start with the columns of {@link ForecastFragment#FORECAST_COLUMNS}, as
+ * the rows are read using its indices.
+ */
+class ForecastLoader extends DebouncedCursorLoader {
+
+    // The rows most recently delivered, which the next load is compared against
+    private volatile ForecastRow[] mDeliveredRows;
+
+    ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context, uri, projection, null, null, sortOrder, DEFAULT_DEBOUNCE_MILLIS);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (null == cursor) {
+            return null;
+        }
+        ForecastRow[] rows = buildRows(getContext(), cursor);
+        ForecastRow[] deliveredRows = mDeliveredRows;
+        ForecastDiff diff = null == deliveredRows ? null : ForecastDiff.compute(deliveredRows, rows);
+        return new ForecastCursor(cursor, rows, diff);
+    }
+
+    /**
+     * Formats the rows of a cursor with the forecast list's projection.
+     */
+    static ForecastRow[] buildRows(Context context, Cursor cursor) {
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        for (int i = 0; cursor.moveToPosition(i); i++) {
+            rows[i] = new ForecastRow(context,
+                    cursor.getLong(ForecastFragment.COL_WEATHER_DATE),
+                    cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP),
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP),
+                    localGraphics);
+        }
+        return rows;
+    }
+
+    /**
+     * Sets the rows the list is already showing from elsewhere, so that the first load is
+     * delivered as changes to them.  Must be called before the loader starts.
+     */
+    void setShownRows(ForecastRow[] rows) {
+        mDeliveredRows = rows;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isStarted()) {
+            mDeliveredRows = cursor instanceof ForecastCursor
+                    ? ((ForecastCursor) cursor).getRows() : null;
+        }
+        super.deliverResult(cursor);
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        mDeliveredRows = null;
+    }
+}
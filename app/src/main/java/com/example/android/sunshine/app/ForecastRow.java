@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Everything the forecast list shows for one day, formatted ahead of time so that binding a
+ * row doesn't have to read the cursor or format anything.  Rows are handed to the detail view
+ * too, which shows the same things for the day before its own query returns.
+ */
+public final class ForecastRow implements Parcelable {
+    final long date;
+    final int weatherId;
+    final double high;
+    final double low;
+
+    final String dateText;
+    // The date as shown by the larger "today" layout, which spells today out in full
+    final String longDateText;
+    // The date as shown by the detail view
+    final String fullDateText;
+    final String description;
+    final String descriptionA11y;
+    final String highText;
+    final String highA11y;
+    final String lowText;
+    final String lowA11y;
+
+    final int iconResource;
+    final int artResource;
+    // null when local graphics are used
+    final String artUrl;
+
+    ForecastRow(Context context, long date, int weatherId, double high, double low,
+                boolean localGraphics) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+
+        dateText = Utility.getFriendlyDayString(context, date, false);
+        longDateText = Utility.getFriendlyDayString(context, date, true);
+        fullDateText = Utility.getFullFriendlyDayString(context, date);
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        highText = Utility.formatTemperature(context, high);
+        highA11y = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context, low);
+        lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+
+        iconResource = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+    }
+
+    /**
+     * @return true if both rows would show the same thing
+     */
+    boolean hasSameContent(ForecastRow other) {
+        return date == other.date
+                && iconResource == other.iconResource
+                && artResource == other.artResource
+                && dateText.equals(other.dateText)
+                && longDateText.equals(other.longDateText)
+                && description.equals(other.description)
+                && highText.equals(other.highText)
+                && lowText.equals(other.lowText)
+                && (artUrl == null ? other.artUrl == null : artUrl.equals(other.artUrl));
+    }
+
+    private ForecastRow(Parcel in) {
+        date = in.readLong();
+        weatherId = in.readInt();
+        high = in.readDouble();
+        low = in.readDouble();
+        dateText = in.readString();
+        longDateText = in.readString();
+        fullDateText = in.readString();
+        description = in.readString();
+        descriptionA11y = in.readString();
+        highText = in.readString();
+        highA11y = in.readString();
+        lowText = in.readString();
+        lowA11y = in.readString();
+        iconResource = in.readInt();
+        artResource = in.readInt();
+        artUrl = in.readString();
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeLong(date);
+        dest.writeInt(weatherId);
+        dest.writeDouble(high);
+        dest.writeDouble(low);
+        dest.writeString(dateText);
+        dest.writeString(longDateText);
+        dest.writeString(fullDateText);
+        dest.writeString(description);
+        dest.writeString(descriptionA11y);
+        dest.writeString(highText);
+        dest.writeString(highA11y);
+        dest.writeString(lowText);
+        dest.writeString(lowA11y);
+        dest.writeInt(iconResource);
+        dest.writeInt(artResource);
+        dest.writeString(artUrl);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    public static final Parcelable.Creator<ForecastRow> CREATOR =
+            new Parcelable.Creator<ForecastRow>() {
+                @Override
+                public ForecastRow createFromParcel(Parcel in) {
+                    return new ForecastRow(in);
+                }
+
+                @Override
+                public ForecastRow[] newArray(int size) {
+                    return new ForecastRow[size];
+                }
+            };
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Measures frame times while a list scrolls, and logs a summary each time it comes to rest:
+ * how many frames were drawn, how many of them missed a vsync, and the longest one.  Used in
+ * debug builds to keep an eye on the cost of binding rows.
+ */
+final class FrameMonitor {
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    // One vsync at 60Hz.  Frames are counted as slow at one and a half of these, which leaves
+    // room for jitter in the frame times.
+    private static final long FRAME_BUDGET_NANOS = 16666667;
+
+    private FrameMonitor() {
+    }
+
+    /**
+     * Logs frame times to the given tag whenever the list scrolls.  Does nothing before Jelly
+     * Bean, which has no Choreographer.
+     */
+    static void watchScrolling(RecyclerView recyclerView, String logTag) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            recyclerView.addOnScrollListener(new ScrollListener(logTag));
+        }
+    }
+
+    // Kept in its own class so that older versions never load a class referring to Choreographer
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ScrollListener extends RecyclerView.OnScrollListener
+            implements Choreographer.FrameCallback {
+        private final String mLogTag;
+
+        private boolean mRunning;
+        private long mLastFrameNanos;
+        private int mFrames;
+        private int mSlowFrames;
+        private long mWorstFrameNanos;
+
+        ScrollListener(String logTag) {
+            mLogTag = logTag;
+        }
+
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                stop();
+            } else if (!mRunning) {
+                start();
+            }
+        }
+
+        private void start() {
+            mRunning = true;
+            mLastFrameNanos = 0;
+            mFrames = 0;
+            mSlowFrames = 0;
+            mWorstFrameNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        private void stop() {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+            if (mFrames > 0) {
+                Log.d(mLogTag, "Scrolled " + mFrames + " frames, " + mSlowFrames + " slow, worst "
+                        + (mWorstFrameNanos / NANOS_PER_MILLI) + "ms");
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameNanos != 0) {
+                long frameNanos = frameTimeNanos - mLastFrameNanos;
+                mFrames++;
+                if (frameNanos > FRAME_BUDGET_NANOS * 3 / 2) {
+                    mSlowFrames++;
+                }
+                if (frameNanos > mWorstFrameNanos) {
+                    mWorstFrameNanos = frameNanos;
+                }
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
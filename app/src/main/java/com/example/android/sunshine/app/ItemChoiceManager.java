@@ -15,25 +15,29 @@
  */
 package com.example.android.sunshine.app;
 
-import android.os.Build;
 import android.os.Bundle;
-import android.os.Parcel;
-import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
-import android.util.SparseBooleanArray;
 import android.widget.AbsListView;
 import android.widget.Checkable;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  If the adapter
+ * has stable ids, the selection follows its item across changes in the underlying data.
+ * <p>
+ * Checked positions are kept in a bit set.  Checked ids are kept in a sorted array along with
+ * the last position each was seen at, so the memory used, the work done on data set changes and
+ * the saved state all grow with the number of checked items rather than the size of the list.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
-    private final String SELECTED_ITEMS_KEY = "SIK";
+    private final String SELECTED_POSITIONS_KEY = "SIP";
+    private final String SELECTED_IDS_KEY = "SII";
+    private final String SELECTED_ID_POSITIONS_KEY = "SIIP";
     private int mChoiceMode;
 
     private RecyclerView.Adapter mAdapter;
@@ -44,15 +48,29 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
     }
 
-    ;
-
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -65,20 +83,21 @@ public class ItemChoiceManager {
     /**
      * Running state of which positions are currently checked
      */
-    SparseBooleanArray mCheckStates = new SparseBooleanArray();
+    BitSet mCheckStates = new BitSet();
 
     /**
-     * Running state of which IDs are currently checked.
-     * If there is a value for a given key, the checked state for that ID is true
-     * and the value holds the last known position in the adapter for that id.
+     * Running state of which IDs are currently checked, sorted so they can be searched.
+     * mCheckedIdPositions holds the last known position in the adapter for the id at the same
+     * index.  Only the first mCheckedIdCount entries are in use.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    long[] mCheckedIds = new long[4];
+    int[] mCheckedIdPositions = new int[4];
+    int mCheckedIdCount;
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
             return;
 
-        int checkedItemCount = mCheckStates.size();
         int position = vh.getAdapterPosition();
 
         if (position == RecyclerView.NO_POSITION) {
@@ -90,15 +109,14 @@ public class ItemChoiceManager {
             case AbsListView.CHOICE_MODE_NONE:
                 break;
             case AbsListView.CHOICE_MODE_SINGLE: {
-                boolean checked = mCheckStates.get(position, false);
+                boolean checked = mCheckStates.get(position);
                 if (!checked) {
-                    for (int i = 0; i < checkedItemCount; i++) {
-                        mAdapter.notifyItemChanged(mCheckStates.keyAt(i));
+                    notifyCheckedItemsChanged();
+                    clearSelections();
+                    mCheckStates.set(position);
+                    if (mAdapter.hasStableIds()) {
+                        putCheckedId(mAdapter.getItemId(position), position);
                     }
-                    mCheckStates.clear();
-                    mCheckStates.put(position, true);
-                    mCheckedIdStates.clear();
-                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
                 }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
@@ -107,8 +125,16 @@ public class ItemChoiceManager {
                 break;
             }
             case AbsListView.CHOICE_MODE_MULTIPLE: {
-                boolean checked = mCheckStates.get(position, false);
-                mCheckStates.put(position, !checked);
+                boolean checked = mCheckStates.get(position);
+                mCheckStates.set(position, !checked);
+                if (mAdapter.hasStableIds()) {
+                    long id = mAdapter.getItemId(position);
+                    if (checked) {
+                        removeCheckedId(id);
+                    } else {
+                        putCheckedId(id, position);
+                    }
+                }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -121,6 +147,19 @@ public class ItemChoiceManager {
         }
     }
 
+    /**
+     * Tells the adapter that the checked items changed, one notification per run of adjacent
+     * checked positions.
+     */
+    private void notifyCheckedItemsChanged() {
+        for (int start = mCheckStates.nextSetBit(0); start >= 0;
+             start = mCheckStates.nextSetBit(start)) {
+            int end = mCheckStates.nextClearBit(start);
+            mAdapter.notifyItemRangeChanged(start, end - start);
+            start = end;
+        }
+    }
+
     /**
      * Defines the choice behavior for the RecyclerView. By default, RecyclerViewChoiceMode does
      * not have any choice behavior (AbsListView.CHOICE_MODE_NONE). By setting the choiceMode to
@@ -151,18 +190,57 @@ public class ItemChoiceManager {
 
     void clearSelections() {
         mCheckStates.clear();
-        mCheckedIdStates.clear();
+        mCheckedIdCount = 0;
+    }
+
+    private int indexOfCheckedId(long id) {
+        return Arrays.binarySearch(mCheckedIds, 0, mCheckedIdCount, id);
+    }
+
+    private void putCheckedId(long id, int position) {
+        int index = indexOfCheckedId(id);
+        if (index >= 0) {
+            mCheckedIdPositions[index] = position;
+            return;
+        }
+        index = ~index;
+        if (mCheckedIdCount == mCheckedIds.length) {
+            mCheckedIds = Arrays.copyOf(mCheckedIds, mCheckedIdCount * 2);
+            mCheckedIdPositions = Arrays.copyOf(mCheckedIdPositions, mCheckedIdCount * 2);
+        }
+        System.arraycopy(mCheckedIds, index, mCheckedIds, index + 1, mCheckedIdCount - index);
+        System.arraycopy(mCheckedIdPositions, index, mCheckedIdPositions, index + 1,
+                mCheckedIdCount - index);
+        mCheckedIds[index] = id;
+        mCheckedIdPositions[index] = position;
+        mCheckedIdCount++;
+    }
+
+    private void removeCheckedId(long id) {
+        int index = indexOfCheckedId(id);
+        if (index >= 0) {
+            removeCheckedIdAt(index);
+        }
+    }
+
+    private void removeCheckedIdAt(int index) {
+        mCheckedIdCount--;
+        System.arraycopy(mCheckedIds, index + 1, mCheckedIds, index, mCheckedIdCount - index);
+        System.arraycopy(mCheckedIdPositions, index + 1, mCheckedIdPositions, index,
+                mCheckedIdCount - index);
     }
 
     void confirmCheckedPositionsById(int oldItemCount) {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
 
-        for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
-            final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
+        for (int checkedIndex = 0; checkedIndex < mCheckedIdCount; checkedIndex++) {
+            final long id = mCheckedIds[checkedIndex];
+            final int lastPos = mCheckedIdPositions[checkedIndex];
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
+            // The list may have shrunk past the last known position
+            final long lastPosId = lastPos < oldItemCount
+                    ? mAdapter.getItemId(lastPos) : RecyclerView.NO_ID;
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
                 final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
@@ -172,18 +250,18 @@ public class ItemChoiceManager {
                     final long searchId = mAdapter.getItemId(searchPos);
                     if (id == searchId) {
                         found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
+                        mCheckStates.set(searchPos);
+                        mCheckedIdPositions[checkedIndex] = searchPos;
                         break;
                     }
                 }
 
                 if (!found) {
-                    mCheckedIdStates.delete(id);
+                    removeCheckedIdAt(checkedIndex);
                     checkedIndex--;
                 }
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckStates.set(lastPos);
             }
         }
     }
@@ -197,41 +275,38 @@ public class ItemChoiceManager {
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
-        byte[] states = savedInstanceState.getByteArray(SELECTED_ITEMS_KEY);
-        if ( null != states ) {
-            Parcel inParcel = Parcel.obtain();
-            inParcel.unmarshall(states, 0, states.length);
-            inParcel.setDataPosition(0);
-            mCheckStates = inParcel.readSparseBooleanArray();
-            final int numStates = inParcel.readInt();
-            mCheckedIdStates.clear();
-            for (int i=0; i<numStates; i++) {
-                final long key = inParcel.readLong();
-                final int value = inParcel.readInt();
-                mCheckedIdStates.put(key, value);
+        int[] positions = savedInstanceState.getIntArray(SELECTED_POSITIONS_KEY);
+        if ( null != positions ) {
+            mCheckStates.clear();
+            for (int position : positions) {
+                mCheckStates.set(position);
             }
         }
+        long[] ids = savedInstanceState.getLongArray(SELECTED_IDS_KEY);
+        int[] idPositions = savedInstanceState.getIntArray(SELECTED_ID_POSITIONS_KEY);
+        if ( null != ids && null != idPositions && ids.length == idPositions.length ) {
+            // Saved in order, so they are still sorted
+            mCheckedIdCount = ids.length;
+            mCheckedIds = Arrays.copyOf(ids, Math.max(ids.length, 4));
+            mCheckedIdPositions = Arrays.copyOf(idPositions, Math.max(ids.length, 4));
+        }
     }
 
     public void onSaveInstanceState(Bundle outState) {
-        Parcel outParcel = Parcel.obtain();
-        outParcel.writeSparseBooleanArray(mCheckStates);
-        final int numStates = mCheckedIdStates.size();
-        outParcel.writeInt(numStates);
-        for (int i=0; i<numStates; i++) {
-            outParcel.writeLong(mCheckedIdStates.keyAt(i));
-            outParcel.writeInt(mCheckedIdStates.valueAt(i));
+        int[] positions = new int[mCheckStates.cardinality()];
+        int i = 0;
+        for (int position = mCheckStates.nextSetBit(0); position >= 0;
+             position = mCheckStates.nextSetBit(position + 1)) {
+            positions[i++] = position;
         }
-        byte[] states = outParcel.marshall();
-        outState.putByteArray(SELECTED_ITEMS_KEY, states);
-        outParcel.recycle();
+        outState.putIntArray(SELECTED_POSITIONS_KEY, positions);
+        outState.putLongArray(SELECTED_IDS_KEY, Arrays.copyOf(mCheckedIds, mCheckedIdCount));
+        outState.putIntArray(SELECTED_ID_POSITIONS_KEY,
+                Arrays.copyOf(mCheckedIdPositions, mCheckedIdCount));
     }
 
     public int getSelectedItemPosition() {
-        if ( mCheckStates.size() == 0 ) {
-            return RecyclerView.NO_POSITION;
-        } else {
-            return mCheckStates.keyAt(0);
-        }
+        int position = mCheckStates.nextSetBit(0);
+        return position >= 0 ? position : RecyclerView.NO_POSITION;
     }
 }
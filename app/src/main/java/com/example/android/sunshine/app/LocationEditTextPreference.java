@@ -21,15 +21,31 @@ import android.content.Context;
 import android.content.res.TypedArray;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
+import android.support.v7.widget.ListPopupWindow;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 
+import com.example.android.sunshine.app.data.CityIndex;
+import com.example.android.sunshine.app.sync.ForecastPrefetcher;
+
+import java.util.List;
+
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
+    // How many cities to suggest for what has been typed
+    static final private int MAX_SUGGESTIONS = 5;
     private int mMinLength;
+    private CityIndex mCityIndex;
+    private ListPopupWindow mSuggestions;
+    private ArrayAdapter<CityIndex.City> mSuggestionsAdapter;
+    // Fetches the forecast of the location being typed while the dialog is up
+    private ForecastPrefetcher mPrefetcher;
 
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -49,7 +65,24 @@ public class LocationEditTextPreference extends EditTextPreference {
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
-        EditText et = getEditText();
+        mPrefetcher = new ForecastPrefetcher(getContext());
+        final EditText et = getEditText();
+        mCityIndex = CityIndex.get(getContext());
+        if (null != mCityIndex) {
+            mSuggestionsAdapter = new ArrayAdapter<CityIndex.City>(getContext(),
+                    android.R.layout.simple_list_item_1);
+            mSuggestions = new ListPopupWindow(getContext());
+            mSuggestions.setAnchorView(et);
+            mSuggestions.setAdapter(mSuggestionsAdapter);
+            mSuggestions.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+                @Override
+                public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                    et.setText(mSuggestionsAdapter.getItem(position).toString());
+                    et.setSelection(et.length());
+                    mSuggestions.dismiss();
+                }
+            });
+        }
         et.addTextChangedListener(new TextWatcher() {
 
 
@@ -78,7 +111,56 @@ public class LocationEditTextPreference extends EditTextPreference {
                         positiveButton.setEnabled(true);
                     }
                 }
+                if (null != mSuggestions) {
+                    showSuggestions(et, s.length() < mMinLength ? "" : s.toString());
+                }
+                if (null != mPrefetcher) {
+                    mPrefetcher.setCandidate(s.length() < mMinLength ? null : s.toString());
+                }
             }
         });
     }
+
+    /**
+     * Suggests the cities starting with what has been typed, and flags a city name that doesn't
+     * exist before it costs a sync.
+     */
+    private void showSuggestions(EditText et, String typed) {
+        List<CityIndex.City> cities = mCityIndex.search(typed, MAX_SUGGESTIONS);
+        mSuggestionsAdapter.clear();
+        for (CityIndex.City city : cities) {
+            mSuggestionsAdapter.add(city);
+        }
+        // Nothing to suggest once the name is complete
+        if (cities.isEmpty() || (cities.size() == 1
+                && CityIndex.normalize(cities.get(0).name).equals(CityIndex.normalize(typed)))) {
+            mSuggestions.dismiss();
+        } else if (!mSuggestions.isShowing()) {
+            mSuggestions.show();
+        }
+        et.setError(typed.length() != 0 && mCityIndex.isUnknownName(typed)
+                ? getContext().getString(R.string.pref_location_unknown_city) : null);
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (positiveResult) {
+            // Entering a location again is worth another try, even if the server didn't find it
+            // a moment ago
+            Utility.removeLocationNotFound(getContext(),
+                    Utility.getLocationKey(getContext(), getEditText().getText().toString()));
+        }
+        super.onDialogClosed(positiveResult);
+        if (null != mSuggestions) {
+            mSuggestions.dismiss();
+            mSuggestions = null;
+            mSuggestionsAdapter = null;
+            mCityIndex = null;
+        }
+        if (null != mPrefetcher) {
+            // The text is saved by now, and the change of location about to trigger a sync
+            mPrefetcher.finish(positiveResult ? getText() : null);
+            mPrefetcher = null;
+        }
+    }
 }
@@ -15,10 +15,13 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.app.ActivityOptionsCompat;
@@ -46,6 +49,11 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     private boolean mTwoPane;
     private String mLocation;
 
+    // A failed Play Services check not shown yet, and the activity to show it in.  Both only
+    // touched on the main thread.
+    private static int sPlayServicesResult = ConnectionResult.SUCCESS;
+    private static MainActivity sResumedActivity;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -89,23 +97,70 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Everything else can wait for the first frame.  It only needs doing once per launch, not
+        // again when the activity is recreated.
+        if (savedInstanceState == null) {
+            startStartupTasks();
+        }
+    }
+
+    private void startStartupTasks() {
+        // The tasks are static classes, so that the pipeline never holds on to an activity that
+        // the system has recreated meanwhile
+        StartupPipeline.Task playServices = new PlayServicesTask();
+        new StartupPipeline(this)
+                .add(new SyncAdapterTask())
+                .add(playServices)
+                .add(new GcmTokenTask(playServices))
+                .start();
+    }
+
+    private static final class SyncAdapterTask extends StartupPipeline.Task {
+        SyncAdapterTask() {
+            super("initializeSyncAdapter");
+        }
 
-        // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
-        // skip the registration and this device will not receive any downstream messages from
-        // our fake server. Because weather alerts are not a core feature of the app, this should
-        // not affect the behavior of the app, from a user perspective.
-        if (checkPlayServices()) {
-            // Because this is the initial creation of the app, we'll want to be certain we have
-            // a token. If we do not, then we will start the IntentService that will register this
-            // application with GCM.
+        @Override
+        boolean run(Context context) {
+            // Looks up the sync account, and creates it and requests the first sync if needed
+            SunshineSyncAdapter.initializeSyncAdapter(context);
+            return true;
+        }
+    }
+
+    private static final class PlayServicesTask extends StartupPipeline.Task {
+        PlayServicesTask() {
+            super("checkPlayServices");
+        }
+
+        @Override
+        boolean run(Context context) {
+            return checkPlayServices(context);
+        }
+    }
+
+    // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
+    // skip the registration and this device will not receive any downstream messages from
+    // our fake server. Because weather alerts are not a core feature of the app, this should
+    // not affect the behavior of the app, from a user perspective.
+    private static final class GcmTokenTask extends StartupPipeline.Task {
+        GcmTokenTask(StartupPipeline.Task playServices) {
+            super("checkGcmToken", playServices);
+        }
+
+        @Override
+        boolean run(Context context) {
+            // Because this is the initial creation of the app, we'll want to be certain we
+            // have a token. If we do not, then we will start the IntentService that will
+            // register this application with GCM.
             SharedPreferences sharedPreferences =
-                    PreferenceManager.getDefaultSharedPreferences(this);
+                    PreferenceManager.getDefaultSharedPreferences(context);
             boolean sentToken = sharedPreferences.getBoolean(SENT_TOKEN_TO_SERVER, false);
             if (!sentToken) {
-                Intent intent = new Intent(this, RegistrationIntentService.class);
-                startService(intent);
+                Intent intent = new Intent(context, RegistrationIntentService.class);
+                context.startService(intent);
             }
+            return true;
         }
     }
 
@@ -132,9 +187,18 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         return super.onOptionsItemSelected(item);
     }
 
+    @Override
+    protected void onPause() {
+        sResumedActivity = null;
+        super.onPause();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        sResumedActivity = this;
+        // The check may have finished while the activity was being recreated
+        showPlayServicesResult();
         String location = Utility.getPreferredLocation( this );
         // update the location in our second pane using the fragment manager
             if (location != null && !location.equals(mLocation)) {
@@ -153,11 +217,20 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     @Override
     public void onItemSelected(Uri contentUri, ForecastAdapter.ForecastAdapterViewHolder vh) {
         if (mTwoPane) {
-            // In two-pane mode, show the detail view in this activity by
+            // In two-pane mode, the detail pane stays and shows the selected day in place,
+            // so moving through the list doesn't rebuild it every time
+            DetailFragment df = (DetailFragment)getSupportFragmentManager().findFragmentByTag(DETAILFRAGMENT_TAG);
+            if ( null != df && null != df.getView() ) {
+                df.showDay(contentUri, vh.getRow());
+                return;
+            }
+
+            // Otherwise, show the detail view in this activity by
             // adding or replacing the detail fragment using a
             // fragment transaction.
             Bundle args = new Bundle();
             args.putParcelable(DetailFragment.DETAIL_URI, contentUri);
+            args.putParcelable(DetailFragment.DETAIL_ROW, vh.getRow());
 
             DetailFragment fragment = new DetailFragment();
             fragment.setArguments(args);
@@ -166,8 +239,10 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     .replace(R.id.weather_detail_container, fragment, DETAILFRAGMENT_TAG)
                     .commit();
         } else {
+            // The row lets the detail view show the day without waiting for its query
             Intent intent = new Intent(this, DetailActivity.class)
-                    .setData(contentUri);
+                    .setData(contentUri)
+                    .putExtra(DetailFragment.DETAIL_ROW, vh.getRow());
 
             ActivityOptionsCompat activityOptions =
                     ActivityOptionsCompat.makeSceneTransitionAnimation(this,
@@ -180,20 +255,43 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
      * the Google Play Store or enable it in the device's system settings.
+     * Called on the startup pipeline's thread.  The result is handed to the main thread, where
+     * whichever instance of the activity is resumed shows it.
      */
-    private boolean checkPlayServices() {
-        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-        int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
+    private static boolean checkPlayServices(Context context) {
+        final int resultCode = GoogleApiAvailability.getInstance()
+                .isGooglePlayServicesAvailable(context);
         if (resultCode != ConnectionResult.SUCCESS) {
-            if (apiAvailability.isUserResolvableError(resultCode)) {
-                apiAvailability.getErrorDialog(this, resultCode,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
-            }
+            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    sPlayServicesResult = resultCode;
+                    if (null != sResumedActivity) {
+                        sResumedActivity.showPlayServicesResult();
+                    }
+                }
+            });
             return false;
         }
         return true;
     }
+
+    /**
+     * Shows the outcome of the Play Services check, once, if it failed.
+     */
+    private void showPlayServicesResult() {
+        int resultCode = sPlayServicesResult;
+        if (resultCode == ConnectionResult.SUCCESS) {
+            return;
+        }
+        sPlayServicesResult = ConnectionResult.SUCCESS;
+        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+        if (apiAvailability.isUserResolvableError(resultCode)) {
+            apiAvailability.getErrorDialog(this, resultCode,
+                    PLAY_SERVICES_RESOLUTION_REQUEST).show();
+        } else {
+            Log.i(LOG_TAG, "This device is not supported.");
+            finish();
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.art.ArtPackStore;
+import com.example.android.sunshine.common.WeatherConditions;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * An immutable copy of the user's preferences that are read while binding views, formatting
+ * temperatures and pushing to widgets and wear.  Reading it costs a field access instead of a
+ * SharedPreferences lookup and a few resource lookups.
+ * <p>
+ * A snapshot is built on first use and thrown away by a change listener whenever one of its
+ * preferences changes.  SharedPreferences calls listeners in no particular order, so other
+ * listeners that read these preferences must call {@link #invalidate()} first.
+ */
+final class PreferenceSnapshot {
+
+    // The canonical key of the location setting
+    final String locationSetting;
+    final boolean metric;
+    final boolean localGraphics;
+    final boolean notificationsEnabled;
+
+    // art key -> url of the art in the selected pack
+    private final HashMap<String, String> mArtUrls;
+
+    private static PreferenceSnapshot sSnapshot;
+
+    // SharedPreferences only keeps a weak reference to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private PreferenceSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = Utility.getLocationKey(context, prefs.getString(
+                context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default)));
+
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        localGraphics = formatArtUrl.equals(sunshineArtPack);
+        // Serve the pack from disk once it has been downloaded
+        String packId = ArtPackStore.getPackId(formatArtUrl);
+        boolean installed = packId.equals(prefs.getString(
+                context.getString(R.string.pref_art_pack_installed_key), null));
+        mArtUrls = new HashMap<String, String>();
+        for (int kind = 0; kind < WeatherConditions.KIND_COUNT; kind++) {
+            String artKey = WeatherConditions.getArtKeyForKind(kind);
+            mArtUrls.put(artKey, installed
+                    ? ArtPackStore.getArtUrl(context, packId, artKey)
+                    : String.format(Locale.US, formatArtUrl, artKey));
+        }
+
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(
+                        context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    /**
+     * @param artKey one of the art names, e.g "light_rain"
+     * @return the url of the art in the selected art pack, a file url once the pack has been
+     * downloaded
+     */
+    String getArtUrl(String artKey) {
+        return mArtUrls.get(artKey);
+    }
+
+    /**
+     * @return the current snapshot, built from the preferences if there is none
+     */
+    static synchronized PreferenceSnapshot get(Context context) {
+        if (null == sSnapshot) {
+            final Context appContext = context.getApplicationContext();
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            if (null == sListener) {
+                sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                          String key) {
+                        // The location status changes with every sync and isn't part of it
+                        if (key.equals(appContext.getString(R.string.pref_location_key)) ||
+                                key.equals(appContext.getString(
+                                        R.string.pref_location_aliases_key)) ||
+                                key.equals(appContext.getString(R.string.pref_units_key)) ||
+                                key.equals(appContext.getString(R.string.pref_art_pack_key)) ||
+                                key.equals(appContext.getString(
+                                        R.string.pref_art_pack_installed_key)) ||
+                                key.equals(appContext.getString(
+                                        R.string.pref_enable_notifications_key))) {
+                            invalidate();
+                        }
+                    }
+                };
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+            }
+            sSnapshot = new PreferenceSnapshot(appContext, prefs);
+        }
+        return sSnapshot;
+    }
+
+    /**
+     * Makes the next {@link #get(Context)} read the preferences again.
+     */
+    static synchronized void invalidate() {
+        sSnapshot = null;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the work an activity needs done at startup, but not before its first frame, on a
+ * background thread.  Tasks run one after another in the order they were added, and a task only
+ * runs if all the tasks it depends on ran and succeeded.  Debug builds log how long each task
+ * took.
+ */
+final class StartupPipeline implements Runnable {
+    private static final String LOG_TAG = StartupPipeline.class.getSimpleName();
+
+    /**
+     * A step of the pipeline.  Runs on the pipeline's thread, so anything touching views must be
+     * posted to the main thread.
+     */
+    abstract static class Task {
+        final String name;
+        final Task[] dependencies;
+
+        Task(String name, Task... dependencies) {
+            this.name = name;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * @param context the application context
+         * @return false if the tasks depending on this one should be skipped
+         */
+        abstract boolean run(Context context);
+    }
+
+    private final Context mContext;
+    private final List<Task> mTasks = new ArrayList<>();
+
+    StartupPipeline(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Adds a task to run after the ones already added.
+     *
+     * @throws IllegalArgumentException if the task depends on a task that hasn't been added yet
+     */
+    StartupPipeline add(Task task) {
+        for (Task dependency : task.dependencies) {
+            if (!mTasks.contains(dependency)) {
+                throw new IllegalArgumentException(task.name + " depends on " + dependency.name
+                        + ", which must be added first");
+            }
+        }
+        mTasks.add(task);
+        return this;
+    }
+
+    void start() {
+        new Thread(this, LOG_TAG).start();
+    }
+
+    @Override
+    public void run() {
+        // Keep out of the way of the main thread, which is drawing the first frames meanwhile
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        long start = SystemClock.uptimeMillis();
+        Set<Task> succeeded = new HashSet<>();
+        for (Task task : mTasks) {
+            if (!dependenciesSucceeded(task, succeeded)) {
+                if (BuildConfig.DEBUG) {
+                    Log.d(LOG_TAG, "Skipped " + task.name);
+                }
+                continue;
+            }
+            long taskStart = SystemClock.uptimeMillis();
+            boolean success;
+            try {
+                success = task.run(mContext);
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, task.name + " failed", e);
+                success = false;
+            }
+            if (success) {
+                succeeded.add(task);
+            }
+            if (BuildConfig.DEBUG) {
+                Log.d(LOG_TAG, task.name + " took " + (SystemClock.uptimeMillis() - taskStart)
+                        + "ms");
+            }
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Startup tasks took " + (SystemClock.uptimeMillis() - start) + "ms");
+        }
+    }
+
+    private static boolean dependenciesSucceeded(Task task, Set<Task> succeeded) {
+        for (Task dependency : task.dependencies) {
+            if (!succeeded.contains(dependency)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
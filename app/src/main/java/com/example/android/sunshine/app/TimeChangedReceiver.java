@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+import com.example.android.sunshine.app.data.DayIndex;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Drops everything cached about the current time zone, date and locale when one of them
+ * changes, and has the forecast rows formatted again, since "Today" and "Tomorrow" move.
+ */
+public class TimeChangedReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        DayIndex.invalidate();
+        DateFormatCache.invalidate();
+        ValueFormatter.invalidate();
+        // Rows are formatted by the loader, reload them the way a change of units does
+        context.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+    }
+}
@@ -17,42 +17,60 @@ package com.example.android.sunshine.app;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
-import android.text.format.Time;
+import android.text.TextUtils;
 
+import com.example.android.sunshine.app.data.CityIndex;
+import com.example.android.sunshine.app.data.DayIndex;
+import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.common.WeatherConditions;
 
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Locale;
+import java.util.List;
 
 public class Utility {
+    // these must match the kinds in WeatherConditions
+    private static final int[] ICONS = new int[]{
+            R.drawable.ic_storm,
+            R.drawable.ic_light_rain,
+            R.drawable.ic_rain,
+            R.drawable.ic_snow,
+            R.drawable.ic_fog,
+            R.drawable.ic_clear,
+            R.drawable.ic_light_clouds,
+            R.drawable.ic_cloudy
+    };
+    private static final int[] ARTS = new int[]{
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
     public static String getPreferredLocation(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_location_key),
-                context.getString(R.string.pref_location_default));
+        return PreferenceSnapshot.get(context).locationSetting;
     }
 
     public static boolean isMetric(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        return prefs.getString(context.getString(R.string.pref_units_key),
-                context.getString(R.string.pref_units_metric))
-                .equals(context.getString(R.string.pref_units_metric));
+        return PreferenceSnapshot.get(context).metric;
     }
 
     public static String formatTemperature(Context context, double temperature) {
-        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
-        // the values here.
-        String suffix = "\u00B0";
-        if (!isMetric(context)) {
-            temperature = (temperature * 1.8) + 32;
-        }
-
-        // For presentation, assume the user doesn't care about tenths of a degree.
-        return String.format(context.getString(R.string.format_temperature), temperature);
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, it's
+        // converted while formatting.  For presentation, assume the user doesn't care about
+        // tenths of a degree.
+        return ValueFormatter.get(context).formatTemperature(temperature, isMetric(context));
     }
 
     static String formatDate(long dateInMilliseconds) {
@@ -79,11 +97,8 @@ public class Utility {
         // For the next 5 days: "Wednesday" (just the day name)
         // For all days after that: "Mon Jun 8"
 
-        Time time = new Time();
-        time.setToNow();
-        long currentTime = System.currentTimeMillis();
-        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
-        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+        int julianDay = DayIndex.getDayIndex(dateInMillis);
+        int currentJulianDay = DayIndex.getToday();
 
         // If the date we're building the String for is today's date, the format
         // is "Today, June 24"
@@ -99,8 +114,7 @@ public class Utility {
             return getDayName(context, dateInMillis);
         } else {
             // Otherwise, use the form "Mon Jun 3"
-            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
-            return shortenedDateFormat.format(dateInMillis);
+            return DateFormatCache.format(DateFormatCache.SHORT_DATE, dateInMillis);
         }
     }
 
@@ -134,70 +148,38 @@ public class Utility {
         // If the date is today, return the localized version of "Today" instead of the actual
         // day name.
 
-        Time t = new Time();
-        t.setToNow();
-        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
-        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        int julianDay = DayIndex.getDayIndex(dateInMillis);
+        int currentJulianDay = DayIndex.getToday();
         if (julianDay == currentJulianDay) {
             return context.getString(R.string.today);
         } else if ( julianDay == currentJulianDay +1 ) {
             return context.getString(R.string.tomorrow);
         } else {
-            Time time = new Time();
-            time.setToNow();
             // Otherwise, the format is just the day of the week (e.g "Wednesday".
-            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-            return dayFormat.format(dateInMillis);
+            return DateFormatCache.format(DateFormatCache.DAY_NAME, dateInMillis);
         }
     }
 
     /**
      * Converts db date format to the format "Month day", e.g "June 24".
      * @param context Context to use for resource localization
-     * @param dateInMillis The db formatted date string, expected to be of the form specified
-     *                in Utility.DATE_FORMAT
+     * @param dateInMillis The date in milliseconds
      * @return The day in the form of a string formatted "December 6"
      */
     public static String getFormattedMonthDay(Context context, long dateInMillis ) {
-        Time time = new Time();
-        time.setToNow();
-        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
-        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
-        String monthDayString = monthDayFormat.format(dateInMillis);
-        return monthDayString;
+        return DateFormatCache.format(DateFormatCache.MONTH_DAY, dateInMillis);
     }
 
     public static String getFormattedWind(Context context, float windSpeed, float degrees) {
-        int windFormat;
-        if (Utility.isMetric(context)) {
-            windFormat = R.string.format_wind_kmh;
-        } else {
-            windFormat = R.string.format_wind_mph;
-            windSpeed = .621371192237334f * windSpeed;
-        }
+        return ValueFormatter.get(context).formatWind(windSpeed, degrees, isMetric(context));
+    }
 
-        // From wind direction in degrees, determine compass direction as a string (e.g NW)
-        // You know what's fun, writing really long if/else statements with tons of possible
-        // conditions.  Seriously, try it!
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
-        return String.format(context.getString(windFormat), windSpeed, direction);
+    public static String getFormattedPressure(Context context, float pressure) {
+        return ValueFormatter.get(context).formatPressure(pressure);
+    }
+
+    public static String getFormattedHumidity(Context context, float humidity) {
+        return ValueFormatter.get(context).formatHumidity(humidity);
     }
 
     /**
@@ -207,32 +189,8 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getIconResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.ic_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.ic_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.ic_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.ic_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.ic_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.ic_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.ic_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.ic_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.ic_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.ic_cloudy;
-        }
-        return -1;
+        int kind = WeatherConditions.getKind(weatherId);
+        return kind == WeatherConditions.KIND_UNKNOWN ? -1 : ICONS[kind];
     }
 
     /**
@@ -242,10 +200,7 @@ public class Utility {
      * @return true if Sunshine is using local graphics, false otherwise.
      */
     public static boolean usingLocalGraphics(Context context) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
-        return prefs.getString(context.getString(R.string.pref_art_pack_key),
-                sunshineArtPack).equals(sunshineArtPack);
+        return PreferenceSnapshot.get(context).localGraphics;
     }
 
     /**
@@ -257,36 +212,8 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
-                context.getString(R.string.pref_art_pack_sunshine));
-
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, formatArtUrl, "light_rain");
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId == 511) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, formatArtUrl, "rain");
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, formatArtUrl, "snow");
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, formatArtUrl, "fog");
-        } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, formatArtUrl, "storm");
-        } else if (weatherId == 800) {
-            return String.format(Locale.US, formatArtUrl, "clear");
-        } else if (weatherId == 801) {
-            return String.format(Locale.US, formatArtUrl, "light_clouds");
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, formatArtUrl, "clouds");
-        }
-        return null;
+        String artKey = WeatherConditions.getArtKey(weatherId);
+        return artKey == null ? null : PreferenceSnapshot.get(context).getArtUrl(artKey);
     }
 
     /**
@@ -296,32 +223,8 @@ public class Utility {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        int kind = WeatherConditions.getKind(weatherId);
+        return kind == WeatherConditions.KIND_UNKNOWN ? -1 : ARTS[kind];
     }
 
     /**
@@ -332,172 +235,9 @@ public class Utility {
      * @return string for the weather condition. null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        int stringId;
-        if (weatherId >= 200 && weatherId <= 232) {
-            stringId = R.string.condition_2xx;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            stringId = R.string.condition_3xx;
-        } else switch (weatherId) {
-            case 500:
-                stringId = R.string.condition_500;
-                break;
-            case 501:
-                stringId = R.string.condition_501;
-                break;
-            case 502:
-                stringId = R.string.condition_502;
-                break;
-            case 503:
-                stringId = R.string.condition_503;
-                break;
-            case 504:
-                stringId = R.string.condition_504;
-                break;
-            case 511:
-                stringId = R.string.condition_511;
-                break;
-            case 520:
-                stringId = R.string.condition_520;
-                break;
-            case 531:
-                stringId = R.string.condition_531;
-                break;
-            case 600:
-                stringId = R.string.condition_600;
-                break;
-            case 601:
-                stringId = R.string.condition_601;
-                break;
-            case 602:
-                stringId = R.string.condition_602;
-                break;
-            case 611:
-                stringId = R.string.condition_611;
-                break;
-            case 612:
-                stringId = R.string.condition_612;
-                break;
-            case 615:
-                stringId = R.string.condition_615;
-                break;
-            case 616:
-                stringId = R.string.condition_616;
-                break;
-            case 620:
-                stringId = R.string.condition_620;
-                break;
-            case 621:
-                stringId = R.string.condition_621;
-                break;
-            case 622:
-                stringId = R.string.condition_622;
-                break;
-            case 701:
-                stringId = R.string.condition_701;
-                break;
-            case 711:
-                stringId = R.string.condition_711;
-                break;
-            case 721:
-                stringId = R.string.condition_721;
-                break;
-            case 731:
-                stringId = R.string.condition_731;
-                break;
-            case 741:
-                stringId = R.string.condition_741;
-                break;
-            case 751:
-                stringId = R.string.condition_751;
-                break;
-            case 761:
-                stringId = R.string.condition_761;
-                break;
-            case 762:
-                stringId = R.string.condition_762;
-                break;
-            case 771:
-                stringId = R.string.condition_771;
-                break;
-            case 781:
-                stringId = R.string.condition_781;
-                break;
-            case 800:
-                stringId = R.string.condition_800;
-                break;
-            case 801:
-                stringId = R.string.condition_801;
-                break;
-            case 802:
-                stringId = R.string.condition_802;
-                break;
-            case 803:
-                stringId = R.string.condition_803;
-                break;
-            case 804:
-                stringId = R.string.condition_804;
-                break;
-            case 900:
-                stringId = R.string.condition_900;
-                break;
-            case 901:
-                stringId = R.string.condition_901;
-                break;
-            case 902:
-                stringId = R.string.condition_902;
-                break;
-            case 903:
-                stringId = R.string.condition_903;
-                break;
-            case 904:
-                stringId = R.string.condition_904;
-                break;
-            case 905:
-                stringId = R.string.condition_905;
-                break;
-            case 906:
-                stringId = R.string.condition_906;
-                break;
-            case 951:
-                stringId = R.string.condition_951;
-                break;
-            case 952:
-                stringId = R.string.condition_952;
-                break;
-            case 953:
-                stringId = R.string.condition_953;
-                break;
-            case 954:
-                stringId = R.string.condition_954;
-                break;
-            case 955:
-                stringId = R.string.condition_955;
-                break;
-            case 956:
-                stringId = R.string.condition_956;
-                break;
-            case 957:
-                stringId = R.string.condition_957;
-                break;
-            case 958:
-                stringId = R.string.condition_958;
-                break;
-            case 959:
-                stringId = R.string.condition_959;
-                break;
-            case 960:
-                stringId = R.string.condition_960;
-                break;
-            case 961:
-                stringId = R.string.condition_961;
-                break;
-            case 962:
-                stringId = R.string.condition_962;
-                break;
-            default:
-                return context.getString(R.string.condition_unknown, weatherId);
+        int stringId = WeatherConditions.getStringResource(weatherId);
+        if (stringId == 0) {
+            return context.getString(R.string.condition_unknown, weatherId);
         }
         return context.getString(stringId);
     }
@@ -510,32 +250,15 @@ public class Utility {
      * @return A string URL to an appropriate image or null if no mapping is found
      */
     public static String getImageUrlForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg";
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg";
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId == 511) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg";
-        } else if (weatherId == 761 || weatherId == 781) {
-            return "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
-        } else if (weatherId == 800) {
-            return "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg";
-        } else if (weatherId == 801) {
-            return "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg";
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg";
-        }
-        return null;
+        return WeatherConditions.getImageUrl(weatherId);
+    }
+
+    /**
+     * @param c Context used to get the SharedPreferences
+     * @return true if the user wants a notification with the first forecast of the day
+     */
+    static public boolean areNotificationsEnabled(Context c) {
+        return PreferenceSnapshot.get(c).notificationsEnabled;
     }
 
     /**
@@ -565,6 +288,197 @@ public class Utility {
         return sp.getInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
     }
 
+    /**
+     * Returns true if the forecast stored for the location was fetched recently enough that
+     * another sync would be redundant.
+     *
+     * @param c Context used to get the ContentResolver
+     * @param locationSetting The location to check
+     * @return true if the stored forecast hasn't expired yet
+     */
+    static public boolean isLocationFresh(Context c, String locationSetting) {
+        Cursor cursor = c.getContentResolver().query(
+                WeatherContract.LocationEntry.buildLocationFreshnessUri(locationSetting),
+                new String[]{WeatherContract.LocationEntry.COLUMN_IS_FRESH},
+                null,
+                null,
+                null);
+        if (null == cursor) {
+            return false;
+        }
+        try {
+            return cursor.moveToFirst() && cursor.getInt(0) != 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // How many locations are remembered to share the forecast of a nearby stored location
+    private static final int MAX_LOCATION_ALIASES = 8;
+
+    /**
+     * Maps a location setting to the key its forecast is fetched and stored under.  Settings
+     * that differ only in case, accents or spacing share a key, and so do the ways of naming a
+     * city of the bundled city index.  A key that has been found to lie next to another stored
+     * location is replaced by that location, see {@link #addLocationAlias}.
+     *
+     * @param c Context used to get the SharedPreferences and the city index
+     * @param locationSetting The location as typed by the user
+     * @return the canonical location setting
+     */
+    static public String getLocationKey(Context c, String locationSetting) {
+        String key = WeatherContract.LocationEntry.canonicalizeLocationSetting(locationSetting);
+        CityIndex cityIndex = CityIndex.get(c);
+        if (null != cityIndex) {
+            CityIndex.City city = cityIndex.resolve(key);
+            if (null != city) {
+                key = WeatherContract.LocationEntry.canonicalizeLocationSetting(city.toString());
+            }
+        }
+        for (String alias : getLocationAliases(c)) {
+            int tab = alias.indexOf('\t');
+            if (alias.substring(0, tab).equals(key)) {
+                return alias.substring(tab + 1);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Makes a location key share the forecast stored for another location nearby.  Only the
+     * most recent few are kept.
+     *
+     * @param c Context used to get the SharedPreferences
+     * @param locationKey The key of the location, as returned by {@link #getLocationKey}
+     * @param storedLocation The location setting of the stored location to use instead
+     */
+    static public void addLocationAlias(Context c, String locationKey, String storedLocation) {
+        List<String> aliases = getLocationAliases(c);
+        for (int i = 0; i < aliases.size(); i++) {
+            if (aliases.get(i).startsWith(locationKey + "\t")) {
+                aliases.remove(i);
+                break;
+            }
+        }
+        aliases.add(locationKey + "\t" + storedLocation);
+        if (aliases.size() > MAX_LOCATION_ALIASES) {
+            aliases.remove(0);
+        }
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        sp.edit().putString(c.getString(R.string.pref_location_aliases_key),
+                TextUtils.join("\n", aliases)).apply();
+        // Listeners are called on the main thread, the caller may use the key right away
+        PreferenceSnapshot.invalidate();
+    }
+
+    // Oldest first, each a key and a location setting separated by a tab
+    private static List<String> getLocationAliases(Context c) {
+        return getStringList(c, R.string.pref_location_aliases_key);
+    }
+
+    // How many locations the server didn't find are remembered
+    private static final int MAX_LOCATIONS_NOT_FOUND = 8;
+    // How long a location the server didn't find is skipped, in case the miss was transient
+    private static final long LOCATION_NOT_FOUND_MILLIS = 1000 * 60 * 60 * 6;
+
+    /**
+     * Returns true if the server didn't find the location recently, so fetching its forecast
+     * would be a wasted round trip.  A name the bundled city index doesn't have is only warned
+     * about while it is being edited, as the index can't know every name the server does.
+     *
+     * @param c Context used to get the SharedPreferences
+     * @param locationSetting The location to check
+     * @return true if the location is invalid
+     */
+    static public boolean isLocationInvalid(Context c, String locationSetting) {
+        return indexOfLocationNotFound(getLocationsNotFound(c), locationSetting) >= 0;
+    }
+
+    /**
+     * Remembers that the server didn't find the location.  Only the most recent few are kept,
+     * for LOCATION_NOT_FOUND_MILLIS.
+     *
+     * @param c Context used to get the SharedPreferences
+     * @param locationSetting The location the server didn't find
+     */
+    static public void addLocationNotFound(Context c, String locationSetting) {
+        List<String> notFound = getLocationsNotFound(c);
+        int index = indexOfLocationNotFound(notFound, locationSetting);
+        if (index >= 0) {
+            notFound.remove(index);
+        }
+        notFound.add(System.currentTimeMillis() + "\t" + locationSetting);
+        if (notFound.size() > MAX_LOCATIONS_NOT_FOUND) {
+            notFound.remove(0);
+        }
+        putLocationsNotFound(c, notFound);
+    }
+
+    /**
+     * Forgets that the server didn't find the location, for when the user enters it again.
+     *
+     * @param c Context used to get the SharedPreferences
+     * @param locationSetting The location to look up again
+     */
+    static public void removeLocationNotFound(Context c, String locationSetting) {
+        List<String> notFound = getLocationsNotFound(c);
+        int index = indexOfLocationNotFound(notFound, locationSetting);
+        if (index >= 0) {
+            notFound.remove(index);
+            putLocationsNotFound(c, notFound);
+        }
+    }
+
+    // Oldest first, each the time the server didn't find the location and the location,
+    // separated by a tab.  Expired entries are left out.
+    private static List<String> getLocationsNotFound(Context c) {
+        List<String> notFound = getStringList(c, R.string.pref_locations_not_found_key);
+        long expired = System.currentTimeMillis() - LOCATION_NOT_FOUND_MILLIS;
+        for (int i = notFound.size() - 1; i >= 0; i--) {
+            String entry = notFound.get(i);
+            int tab = entry.indexOf('\t');
+            long time = 0;
+            if (tab > 0) {
+                try {
+                    time = Long.parseLong(entry.substring(0, tab));
+                } catch (NumberFormatException e) {
+                    // an entry of another format, dropped below
+                }
+            }
+            if (time <= expired) {
+                notFound.remove(i);
+            }
+        }
+        return notFound;
+    }
+
+    private static int indexOfLocationNotFound(List<String> notFound, String locationSetting) {
+        for (int i = 0; i < notFound.size(); i++) {
+            String entry = notFound.get(i);
+            if (entry.substring(entry.indexOf('\t') + 1).equals(locationSetting)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void putLocationsNotFound(Context c, List<String> notFound) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        sp.edit().putString(c.getString(R.string.pref_locations_not_found_key),
+                TextUtils.join("\n", notFound)).apply();
+    }
+
+    // A string rather than a string set, which needs Honeycomb
+    private static List<String> getStringList(Context c, int keyResId) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        String joined = sp.getString(c.getString(keyResId), "");
+        List<String> strings = new ArrayList<String>();
+        if (joined.length() != 0) {
+            Collections.addAll(strings, joined.split("\n"));
+        }
+        return strings;
+    }
+
     /**
      * Resets the location status.  (Sets it to SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN)
      * @param c Context used to get the SharedPreferences
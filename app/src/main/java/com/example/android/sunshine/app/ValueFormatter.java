@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Formats temperatures, wind, pressure and humidity without going through String.format.
+ * <p>
+ * The unit format strings are split once per locale into the text around their arguments.
+ * Formatting then only appends that text and the digits of the rounded value to a per-thread
+ * StringBuilder, using the locale's digits.  Format strings this can't handle (anything but
+ * whole numbers and a single string) fall back to String.format.
+ */
+final class ValueFormatter {
+
+    // Compass points, each covering 45 degrees centered on its direction
+    private static final String[] COMPASS_POINTS = new String[]{
+            "N", "NE", "E", "SE", "S", "SW", "W", "NW"
+    };
+
+    private static final float KMH_TO_MPH = .621371192237334f;
+
+    // Arguments of the format strings: the value, and for wind the compass direction
+    private static final int ARG_NUMBER = 0;
+    private static final int ARG_TEXT = 1;
+
+    private static volatile ValueFormatter sInstance;
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
+    private final Locale mLocale;
+    private final char mZeroDigit;
+    private final char mMinusSign;
+
+    private final Template mTemperature;
+    private final Template mWindKmh;
+    private final Template mWindMph;
+    private final Template mPressure;
+    private final Template mHumidity;
+
+    private ValueFormatter(Context context, Locale locale) {
+        mLocale = locale;
+        DecimalFormatSymbols symbols = new DecimalFormatSymbols(locale);
+        mZeroDigit = symbols.getZeroDigit();
+        mMinusSign = symbols.getMinusSign();
+
+        mTemperature = Template.parse(context.getString(R.string.format_temperature));
+        mWindKmh = Template.parse(context.getString(R.string.format_wind_kmh));
+        mWindMph = Template.parse(context.getString(R.string.format_wind_mph));
+        mPressure = Template.parse(context.getString(R.string.format_pressure));
+        mHumidity = Template.parse(context.getString(R.string.format_humidity));
+    }
+
+    /**
+     * @return the formatter for the current locale
+     */
+    static ValueFormatter get(Context context) {
+        ValueFormatter formatter = sInstance;
+        Locale locale = Locale.getDefault();
+        if (null == formatter || !formatter.mLocale.equals(locale)) {
+            formatter = new ValueFormatter(context.getApplicationContext(), locale);
+            sInstance = formatter;
+        }
+        return formatter;
+    }
+
+    static void invalidate() {
+        sInstance = null;
+    }
+
+    /**
+     * @param temperature in Celsius, as stored
+     * @param metric      false to convert to Fahrenheit
+     */
+    String formatTemperature(double temperature, boolean metric) {
+        if (!metric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return format(mTemperature, temperature, null);
+    }
+
+    /**
+     * @param windSpeed in km/h, as stored
+     * @param degrees   meteorological degrees
+     * @param metric    false to convert to mph
+     */
+    String formatWind(float windSpeed, float degrees, boolean metric) {
+        if (metric) {
+            return format(mWindKmh, windSpeed, getCompassDirection(degrees));
+        } else {
+            return format(mWindMph, KMH_TO_MPH * windSpeed, getCompassDirection(degrees));
+        }
+    }
+
+    String formatPressure(float pressure) {
+        return format(mPressure, pressure, null);
+    }
+
+    String formatHumidity(float humidity) {
+        return format(mHumidity, humidity, null);
+    }
+
+    /**
+     * @param degrees meteorological degrees (e.g, 0 is north, 180 is south)
+     * @return the nearest compass point, e.g "NW"
+     */
+    static String getCompassDirection(float degrees) {
+        if (!(degrees >= 0)) {
+            // negative, or not a number
+            return "Unknown";
+        }
+        return COMPASS_POINTS[(int) ((degrees + 22.5f) / 45) % COMPASS_POINTS.length];
+    }
+
+    private String format(Template template, double number, String text) {
+        if (!template.supported) {
+            return String.format(template.format, number, text);
+        }
+        StringBuilder builder = sBuilder.get();
+        builder.setLength(0);
+        for (int i = 0; i < template.args.length; i++) {
+            builder.append(template.literals[i]);
+            if (template.args[i] == ARG_NUMBER) {
+                appendRounded(builder, number);
+            } else {
+                builder.append(text);
+            }
+        }
+        builder.append(template.literals[template.args.length]);
+        return builder.toString();
+    }
+
+    /**
+     * Appends the value rounded half up to a whole number, like "%.0f" does, but never
+     * as "-0".
+     */
+    private void appendRounded(StringBuilder builder, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            builder.append(String.format(mLocale, "%.0f", value));
+            return;
+        }
+        long rounded = Math.round(Math.abs(value));
+        if (value < 0 && rounded != 0) {
+            builder.append(mMinusSign);
+        }
+        // Digits come out least significant first, so reverse them in place afterwards
+        int start = builder.length();
+        do {
+            builder.append((char) (mZeroDigit + (int) (rounded % 10)));
+            rounded /= 10;
+        } while (rounded != 0);
+        for (int i = start, j = builder.length() - 1; i < j; i++, j--) {
+            char digit = builder.charAt(i);
+            builder.setCharAt(i, builder.charAt(j));
+            builder.setCharAt(j, digit);
+        }
+    }
+
+    /**
+     * A format string split into the literal text around its arguments:
+     * literals[0] args[0] literals[1] ... args[n - 1] literals[n].
+     */
+    private static final class Template {
+        final String format;
+        final String[] literals;
+        final int[] args;
+        // false if the format string uses anything appendRounded can't reproduce
+        final boolean supported;
+
+        private Template(String format, String[] literals, int[] args, boolean supported) {
+            this.format = format;
+            this.literals = literals;
+            this.args = args;
+            this.supported = supported;
+        }
+
+        static Template parse(String format) {
+            ArrayList<String> literals = new ArrayList<String>();
+            ArrayList<Integer> args = new ArrayList<Integer>();
+            StringBuilder literal = new StringBuilder();
+            boolean supported = true;
+            int nextArg = 0;
+
+            int length = format.length();
+            int i = 0;
+            while (i < length) {
+                char c = format.charAt(i);
+                if (c != '%') {
+                    literal.append(c);
+                    i++;
+                    continue;
+                }
+                if (i + 1 < length && format.charAt(i + 1) == '%') {
+                    literal.append('%');
+                    i += 2;
+                    continue;
+                }
+
+                // %[argument$][width][.precision]conversion
+                int j = i + 1;
+                int number = 0;
+                int digits = 0;
+                while (j < length && Character.isDigit(format.charAt(j))) {
+                    number = number * 10 + (format.charAt(j) - '0');
+                    digits++;
+                    j++;
+                }
+                int arg;
+                if (j < length && format.charAt(j) == '$' && digits > 0) {
+                    arg = number - 1;
+                    j++;
+                    while (j < length && Character.isDigit(format.charAt(j))) {
+                        j++;
+                    }
+                } else {
+                    arg = nextArg++;
+                }
+                int precision = -1;
+                if (j < length && format.charAt(j) == '.') {
+                    precision = 0;
+                    j++;
+                    while (j < length && Character.isDigit(format.charAt(j))) {
+                        precision = precision * 10 + (format.charAt(j) - '0');
+                        j++;
+                    }
+                }
+                char conversion = j < length ? format.charAt(j) : 0;
+
+                if (!(arg == ARG_NUMBER && conversion == 'f' && precision == 0) &&
+                        !(arg == ARG_TEXT && conversion == 's')) {
+                    supported = false;
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                args.add(arg);
+                i = j + 1;
+            }
+            literals.add(literal.toString());
+
+            int[] argArray = new int[args.size()];
+            for (int k = 0; k < argArray.length; k++) {
+                argArray[k] = args.get(k);
+            }
+            return new Template(format, literals.toArray(new String[literals.size()]), argArray,
+                    supported);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.TypedValue;
+
+/**
+ * Inflates the forecast list's rows while the main thread sits idle waiting for the forecast to
+ * load, and hands them to the list's {@link RecyclerView.RecycledViewPool}.  The first layout
+ * pass then finds its rows in the pool instead of inflating them all at once.
+ * <p>
+ * Rows are inflated on the main thread, one per idle moment: the activity's inflater isn't
+ * thread safe, and neither are views built off the main thread.
+ */
+final class ViewHolderPrefetcher implements MessageQueue.IdleHandler {
+    private static final String LOG_TAG = ViewHolderPrefetcher.class.getSimpleName();
+
+    // Rows beyond the ones filling the screen, for the first scroll
+    private static final int EXTRA_ROWS = 2;
+    // Never inflate more than this many rows ahead of time, whatever the screen size
+    private static final int MAX_ROWS = 16;
+
+    private final RecyclerView mRecyclerView;
+    private final RecyclerView.Adapter mAdapter;
+    private final int mFirstViewType;
+    private final int mViewType;
+    private final int mCount;
+    private int mInflated;
+    private long mInflateMillis;
+
+    private ViewHolderPrefetcher(RecyclerView recyclerView, int firstViewType, int viewType,
+                                 int count) {
+        mRecyclerView = recyclerView;
+        mAdapter = recyclerView.getAdapter();
+        mFirstViewType = firstViewType;
+        mViewType = viewType;
+        mCount = count;
+    }
+
+    /**
+     * Starts inflating enough rows to fill the screen, in idle time: one of the first row's view
+     * type, and the rest of the other one.  Must be called on the main thread, after the adapter
+     * has been set, and only when the list is first created; rows that survive a configuration
+     * change aren't worth the work.
+     *
+     * @param firstViewType the view type of the first row
+     * @param viewType the view type of all the other rows
+     */
+    static void prefetch(RecyclerView recyclerView, int firstViewType, int viewType) {
+        TypedValue value = new TypedValue();
+        int rowHeight = 0;
+        if (recyclerView.getContext().getTheme().resolveAttribute(
+                android.R.attr.listPreferredItemHeight, value, true)) {
+            rowHeight = (int) value.getDimension(recyclerView.getResources().getDisplayMetrics());
+        }
+        if (rowHeight <= 0) {
+            return;
+        }
+        int screenHeight = recyclerView.getResources().getDisplayMetrics().heightPixels;
+        int count = Math.min(screenHeight / rowHeight + EXTRA_ROWS, MAX_ROWS);
+        recyclerView.getRecycledViewPool().setMaxRecycledViews(viewType, count);
+        Looper.myQueue().addIdleHandler(
+                new ViewHolderPrefetcher(recyclerView, firstViewType, viewType, count));
+    }
+
+    @Override
+    public boolean queueIdle() {
+        // Once the list has been laid out it inflates what it still needs itself, and a list
+        // that has been torn down, or given another adapter, needs nothing
+        if (mRecyclerView.getChildCount() > 0 || mRecyclerView.getAdapter() != mAdapter) {
+            return false;
+        }
+
+        long start = SystemClock.uptimeMillis();
+        RecyclerView.ViewHolder holder = mAdapter.createViewHolder(mRecyclerView,
+                0 == mInflated ? mFirstViewType : mViewType);
+        mRecyclerView.getRecycledViewPool().putRecycledView(holder);
+        mInflateMillis += SystemClock.uptimeMillis() - start;
+        mInflated++;
+
+        if (mInflated < mCount) {
+            return true;
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Inflated " + mCount + " rows in " + mInflateMillis + "ms");
+        }
+        return false;
+    }
+}
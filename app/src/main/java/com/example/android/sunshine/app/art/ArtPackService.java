@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.BitmapFactory;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.common.WeatherConditions;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Downloads the whole of the selected art pack, so that the list, the detail view, the
+ * notification and the widgets all load art from local files instead of fetching it one
+ * condition at a time.
+ * <p>
+ * Each piece of art is downloaded to a temporary file, checked to be an image, and renamed into
+ * place.  The pack only counts as installed once all of its art has arrived.  Installing a pack
+ * evicts all but the {@link #MAX_INSTALLED_PACKS} most recently installed ones.
+ */
+public class ArtPackService extends IntentService {
+    private final String LOG_TAG = ArtPackService.class.getSimpleName();
+
+    // The selected pack and the one before it, so that switching back and forth stays local
+    private static final int MAX_INSTALLED_PACKS = 2;
+
+    // Art is a few kilobytes; anything this large isn't what we asked for
+    private static final int MAX_ART_BYTES = 1024 * 1024;
+
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+
+    public ArtPackService() {
+        super("ArtPackService");
+    }
+
+    /**
+     * Installs the selected art pack, unless it already is installed or is the built in one.
+     */
+    public static void startInstall(Context context) {
+        context.startService(new Intent(context, ArtPackService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        String sunshineArtPack = getString(R.string.pref_art_pack_sunshine);
+        String formatArtUrl = PreferenceManager.getDefaultSharedPreferences(this)
+                .getString(getString(R.string.pref_art_pack_key), sunshineArtPack);
+        if (formatArtUrl.equals(sunshineArtPack)) {
+            // Shipped with the app as drawables
+            return;
+        }
+
+        String packId = ArtPackStore.getPackId(formatArtUrl);
+        File packDirectory = ArtPackStore.getPackDirectory(this, packId);
+        File marker = new File(packDirectory, ArtPackStore.COMPLETE_MARKER);
+        if (!marker.exists()) {
+            if (!downloadPack(formatArtUrl, packDirectory)) {
+                // The art urls keep working in the meantime, so there is nothing to undo
+                return;
+            }
+            try {
+                if (!marker.createNewFile() && !marker.exists()) {
+                    Log.e(LOG_TAG, "Couldn't mark " + packDirectory + " complete");
+                    return;
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Couldn't mark " + packDirectory + " complete", e);
+                return;
+            }
+        }
+        // The marker's time orders the packs for eviction
+        marker.setLastModified(System.currentTimeMillis());
+        evictPacks(packDirectory);
+
+        if (!packId.equals(ArtPackStore.getInstalledPackId(this))) {
+            PreferenceManager.getDefaultSharedPreferences(this).edit()
+                    .putString(getString(R.string.pref_art_pack_installed_key), packId)
+                    .commit();
+            // Have the lists pick up the local art
+            getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        }
+    }
+
+    /**
+     * Downloads every piece of art of the pack into the directory.  Art that is already there
+     * from an earlier, interrupted attempt is kept.
+     *
+     * @return true if all of the art is in the directory
+     */
+    private boolean downloadPack(String formatArtUrl, File packDirectory) {
+        if (!packDirectory.isDirectory() && !packDirectory.mkdirs()) {
+            Log.e(LOG_TAG, "Couldn't create " + packDirectory);
+            return false;
+        }
+        for (int kind = 0; kind < WeatherConditions.KIND_COUNT; kind++) {
+            String artKey = WeatherConditions.getArtKeyForKind(kind);
+            File artFile = ArtPackStore.getArtFile(packDirectory, artKey);
+            if (artFile.exists()) {
+                continue;
+            }
+            String artUrl = String.format(Locale.US, formatArtUrl, artKey);
+            File tempFile = new File(packDirectory, artKey + ".tmp");
+            try {
+                download(artUrl, tempFile);
+                if (!isImage(tempFile)) {
+                    Log.e(LOG_TAG, artUrl + " isn't an image");
+                    return false;
+                }
+                if (!tempFile.renameTo(artFile)) {
+                    Log.e(LOG_TAG, "Couldn't move " + tempFile + " to " + artFile);
+                    return false;
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error downloading " + artUrl, e);
+                return false;
+            } finally {
+                tempFile.delete();
+            }
+        }
+        return true;
+    }
+
+    private void download(String artUrl, File file) throws IOException {
+        HttpURLConnection urlConnection = null;
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            urlConnection = (HttpURLConnection) new URL(artUrl).openConnection();
+            urlConnection.setConnectTimeout(TIMEOUT_MILLIS);
+            urlConnection.setReadTimeout(TIMEOUT_MILLIS);
+            urlConnection.connect();
+            if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Server returned " + urlConnection.getResponseCode());
+            }
+
+            inputStream = urlConnection.getInputStream();
+            outputStream = new FileOutputStream(file);
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                total += read;
+                if (total > MAX_ART_BYTES) {
+                    throw new IOException("More than " + MAX_ART_BYTES + " bytes");
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            if (outputStream != null) {
+                try {
+                    outputStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return true if the file decodes to an image with a size
+     */
+    private static boolean isImage(File file) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        return options.outWidth > 0 && options.outHeight > 0;
+    }
+
+    /**
+     * Deletes packs stored in an older layout, half downloaded packs, and all but the most
+     * recently installed complete packs.  Never deletes the given pack.
+     */
+    private void evictPacks(File keep) {
+        File[] directories = ArtPackStore.getArtRoot(this).listFiles();
+        if (null == directories) {
+            return;
+        }
+        // Most recently installed first; incomplete packs count as never installed
+        Arrays.sort(directories, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsTime = new File(lhs, ArtPackStore.COMPLETE_MARKER).lastModified();
+                long rhsTime = new File(rhs, ArtPackStore.COMPLETE_MARKER).lastModified();
+                return lhsTime > rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        String prefix = ArtPackStore.getPackDirectoryName("");
+        int kept = 0;
+        for (File directory : directories) {
+            if (directory.equals(keep)) {
+                kept++;
+                continue;
+            }
+            boolean complete = new File(directory, ArtPackStore.COMPLETE_MARKER).exists();
+            if (directory.getName().startsWith(prefix) && complete
+                    && kept < MAX_INSTALLED_PACKS) {
+                kept++;
+                continue;
+            }
+            Log.d(LOG_TAG, "Evicting art pack " + directory.getName());
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
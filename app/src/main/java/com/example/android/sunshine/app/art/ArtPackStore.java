@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.CRC32;
+
+/**
+ * Where downloaded art packs live on disk.  Each pack gets a directory named after the
+ * {@link #LAYOUT_VERSION} and a hash of the pack's url format, holding one png per art key and a
+ * marker file written once all of them are in place.
+ */
+public final class ArtPackStore {
+    // Bump this when the way packs are stored changes; packs stored the old way are evicted
+    static final int LAYOUT_VERSION = 1;
+
+    static final String ART_DIRECTORY = "art";
+    static final String COMPLETE_MARKER = ".complete";
+    static final String ART_EXTENSION = ".png";
+
+    private ArtPackStore() {
+    }
+
+    /**
+     * @param formatArtUrl the url format of an art pack, as stored in the art pack preference
+     * @return a short name for the pack, which can be used in file names
+     */
+    public static String getPackId(String formatArtUrl) {
+        CRC32 crc = new CRC32();
+        try {
+            crc.update(formatArtUrl.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new AssertionError(e);
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * @return the id of the last pack that was downloaded in full, or null if there is none
+     */
+    public static String getInstalledPackId(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getString(context.getString(R.string.pref_art_pack_installed_key), null);
+    }
+
+    /**
+     * @param packId a pack id from {@link #getPackId(String)}, which must be installed
+     * @param artKey one of the art names, e.g "light_rain"
+     * @return a file url for the art, which Glide loads like any other url
+     */
+    public static String getArtUrl(Context context, String packId, String artKey) {
+        return Uri.fromFile(getArtFile(getPackDirectory(context, packId), artKey)).toString();
+    }
+
+    static File getArtRoot(Context context) {
+        return new File(context.getFilesDir(), ART_DIRECTORY);
+    }
+
+    static String getPackDirectoryName(String packId) {
+        return "v" + LAYOUT_VERSION + "-" + packId;
+    }
+
+    static File getPackDirectory(Context context, String packId) {
+        return new File(getArtRoot(context), getPackDirectoryName(packId));
+    }
+
+    static File getArtFile(File packDirectory, String artKey) {
+        return new File(packDirectory, artKey + ART_EXTENSION);
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The cities OpenWeatherMap knows, from an index bundled with the app, so that location names
+ * can be completed and checked without going to the network.  The index is memory-mapped from
+ * the uncompressed asset, and searched in place.
+ * <p>
+ * The asset is generated by the app's buildCityIndex Gradle task, which every build runs when
+ * OpenWeatherMap's city list is in place; see app/build.gradle.  Layout, big endian: magic,
+ * version, city count, then the offset of each city's record, sorted by the record's key, then
+ * the records.  A record is the key, the display name and the country code, each as a length
+ * prefixed UTF-8 string, followed by the city id, latitude and longitude.  Keys are the
+ * {@link #normalize normalized} names, compared as unsigned bytes.
+ */
+public final class CityIndex {
+    private static final String LOG_TAG = CityIndex.class.getSimpleName();
+
+    private static final String ASSET_NAME = "cities.idx";
+    private static final int MAGIC = 0x43495459;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * A city of the index.
+     */
+    public static final class City {
+        public final int id;
+        public final String name;
+        public final String country;
+        public final float latitude;
+        public final float longitude;
+
+        City(int id, String name, String country, float latitude, float longitude) {
+            this.id = id;
+            this.name = name;
+            this.country = country;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        /**
+         * @return the name and country, the way OpenWeatherMap takes them as a query
+         */
+        @Override
+        public String toString() {
+            return country.length() == 0 ? name : name + "," + country;
+        }
+    }
+
+    private static CityIndex sInstance;
+    private static boolean sLoaded;
+
+    private final ByteBuffer mBuffer;
+    private final int mCount;
+
+    CityIndex(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a city index of version " + VERSION);
+        }
+        mCount = buffer.getInt(8);
+        if (mCount < 0 || HEADER_SIZE + 4L * mCount > buffer.limit()) {
+            throw new IOException("Truncated city index");
+        }
+        mBuffer = buffer;
+    }
+
+    /**
+     * @return the bundled index, or null if the app was built without one
+     */
+    public static synchronized CityIndex get(Context context) {
+        if (!sLoaded) {
+            sLoaded = true;
+            sInstance = load(context);
+        }
+        return sInstance;
+    }
+
+    private static CityIndex load(Context context) {
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getAssets().openFd(ASSET_NAME);
+            FileInputStream in = descriptor.createInputStream();
+            // The mapping stays valid after the file is closed
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+            return new CityIndex(buffer);
+        } catch (IOException e) {
+            Log.d(LOG_TAG, "No city index, location names won't be checked", e);
+            return null;
+        } finally {
+            if (null != descriptor) {
+                try {
+                    descriptor.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + ASSET_NAME, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reduces a name to the form the index is keyed on: lower case, without accents, and with
+     * single spaces between words.
+     */
+    public static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").replaceAll("\\s+", " ")
+                .toLowerCase(Locale.US);
+    }
+
+    /**
+     * @param prefix the start of a city name, in any case and with or without accents
+     * @param limit how many cities to return at most
+     * @return the cities whose names start with the prefix, in name order
+     */
+    public List<City> search(String prefix, int limit) {
+        List<City> cities = new ArrayList<City>();
+        byte[] key = encode(normalize(prefix));
+        if (key.length == 0) {
+            return cities;
+        }
+        try {
+            for (int i = lowerBound(key); i < mCount && cities.size() < limit; i++) {
+                int offset = getRecordOffset(i);
+                if (!startsWith(offset, key)) {
+                    break;
+                }
+                cities.add(readCity(offset));
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            Log.e(LOG_TAG, "Corrupt city index", e);
+        }
+        return cities;
+    }
+
+    /**
+     * Looks up a location setting that names a city, like "London" or "London,GB".
+     *
+     * @return the city, or null if the setting doesn't name exactly one city of the index
+     */
+    public City resolve(String locationSetting) {
+        String name = locationSetting;
+        String country = null;
+        int comma = locationSetting.indexOf(',');
+        if (comma >= 0) {
+            name = locationSetting.substring(0, comma);
+            country = locationSetting.substring(comma + 1).trim();
+        }
+        byte[] key = encode(normalize(name));
+        if (key.length == 0) {
+            return null;
+        }
+        City match = null;
+        try {
+            for (int i = lowerBound(key); i < mCount; i++) {
+                int offset = getRecordOffset(i);
+                if (compareKey(offset, key) != 0) {
+                    break;
+                }
+                City city = readCity(offset);
+                if (null != country && !country.equalsIgnoreCase(city.country)) {
+                    continue;
+                }
+                if (null != match) {
+                    // Ambiguous, let the server decide
+                    return null;
+                }
+                match = city;
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            Log.e(LOG_TAG, "Corrupt city index", e);
+            return null;
+        }
+        return match;
+    }
+
+    /**
+     * @return true if the location setting is a city name, but no city of the index has it.
+     * Postal codes and coordinates are never unknown, as the index doesn't cover them.
+     */
+    public boolean isUnknownName(String locationSetting) {
+        String name = locationSetting;
+        int comma = locationSetting.indexOf(',');
+        if (comma >= 0) {
+            name = locationSetting.substring(0, comma);
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        byte[] key = encode(normalize(name));
+        if (key.length == 0) {
+            return false;
+        }
+        try {
+            int i = lowerBound(key);
+            return i == mCount || compareKey(getRecordOffset(i), key) != 0;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            Log.e(LOG_TAG, "Corrupt city index", e);
+            return false;
+        }
+    }
+
+    // The first position whose key isn't less than the given one
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareKey(getRecordOffset(mid), key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int getRecordOffset(int position) {
+        return mBuffer.getInt(HEADER_SIZE + 4 * position);
+    }
+
+    private int compareKey(int offset, byte[] key) {
+        int length = mBuffer.getShort(offset) & 0xffff;
+        int start = offset + 2;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int difference = (mBuffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    private boolean startsWith(int offset, byte[] prefix) {
+        int length = mBuffer.getShort(offset) & 0xffff;
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (mBuffer.get(offset + 2 + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private City readCity(int offset) {
+        // Absolute reads on a duplicate, so that searches on several threads don't interfere
+        ByteBuffer record = mBuffer.duplicate();
+        record.position(offset);
+        skipString(record);
+        String name = readString(record);
+        String country = readString(record);
+        return new City(record.getInt(), name, country, record.getFloat(), record.getFloat());
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xffff;
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return decode(bytes);
+    }
+
+    private static byte[] encode(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String decode(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.TimeZone;
+
+/**
+ * Converts between milliseconds since the epoch and local day numbers, without allocating.
+ * Day numbers are julian days, so they can be compared with the ones handed out by
+ * {@link android.text.format.Time#getJulianDay}.
+ * <p>
+ * The default time zone and the UTC offset around the current time are cached.  Call
+ * {@link #invalidate()} when the time zone or the clock changes.
+ */
+public final class DayIndex {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // The julian day of January 1st, 1970
+    private static final int EPOCH_JULIAN_DAY = 2440588;
+
+    // How far around the current time the offset cache reaches
+    private static final int CACHED_DAYS_BEFORE = 7;
+    private static final int CACHED_DAYS_AFTER = 21;
+
+    /**
+     * The default time zone, and a window of time around the moment it was cached in which its
+     * offset from UTC doesn't change.  Replaced as a whole when invalidated, so readers on other
+     * threads always see a consistent set of values.
+     */
+    private static final class OffsetCache {
+        final TimeZone timeZone;
+        final long windowStart;
+        final long windowEnd;
+        final int offset;
+
+        OffsetCache(TimeZone timeZone, long now) {
+            this.timeZone = timeZone;
+            int offset = timeZone.getOffset(now);
+
+            // Sample the offset once a day and stop at the first change.  Zones never change
+            // their offset twice within a day, so the offset is constant between two samples
+            // that agree.
+            long start = now;
+            for (int i = 0; i < CACHED_DAYS_BEFORE; i++) {
+                if (timeZone.getOffset(start - DAY_IN_MILLIS) != offset) {
+                    break;
+                }
+                start -= DAY_IN_MILLIS;
+            }
+            long end = now;
+            for (int i = 0; i < CACHED_DAYS_AFTER; i++) {
+                if (timeZone.getOffset(end + DAY_IN_MILLIS) != offset) {
+                    break;
+                }
+                end += DAY_IN_MILLIS;
+            }
+
+            this.windowStart = start;
+            this.windowEnd = end;
+            this.offset = offset;
+        }
+
+        int getOffset(long millis) {
+            if (millis >= windowStart && millis <= windowEnd) {
+                return offset;
+            }
+            return timeZone.getOffset(millis);
+        }
+    }
+
+    private static volatile OffsetCache sOffsetCache;
+
+    private DayIndex() {
+    }
+
+    private static OffsetCache getOffsetCache() {
+        OffsetCache offsetCache = sOffsetCache;
+        if (null == offsetCache) {
+            offsetCache = new OffsetCache(TimeZone.getDefault(), System.currentTimeMillis());
+            sOffsetCache = offsetCache;
+        }
+        return offsetCache;
+    }
+
+    /**
+     * Drops the cached time zone and offsets, which are rebuilt on next use.
+     */
+    public static void invalidate() {
+        sOffsetCache = null;
+    }
+
+    /**
+     * @param millis milliseconds since the epoch
+     * @return the julian day, in the default time zone, that contains the given time
+     */
+    public static int getDayIndex(long millis) {
+        long localMillis = millis + getOffsetCache().getOffset(millis);
+        // Round towards negative infinity, so that times before 1970 land on the right day
+        long days = localMillis / DAY_IN_MILLIS;
+        if (localMillis % DAY_IN_MILLIS < 0) {
+            days--;
+        }
+        return (int) days + EPOCH_JULIAN_DAY;
+    }
+
+    /**
+     * @return the julian day of today in the default time zone
+     */
+    public static int getToday() {
+        return getDayIndex(System.currentTimeMillis());
+    }
+
+    /**
+     * @param dayIndex a julian day
+     * @return the time, in milliseconds since the epoch, of the local midnight that starts the day
+     */
+    public static long getStartOfDay(int dayIndex) {
+        OffsetCache offsetCache = getOffsetCache();
+        long utcMidnight = (dayIndex - EPOCH_JULIAN_DAY) * DAY_IN_MILLIS;
+        // The offset at UTC midnight is a first guess.  The offset at the local midnight it
+        // points to is the right one, unless a transition lies in between.
+        long localMidnight = utcMidnight - offsetCache.getOffset(utcMidnight);
+        return utcMidnight - offsetCache.getOffset(localMidnight);
+    }
+
+    /**
+     * @param millis milliseconds since the epoch
+     * @return the time of the local midnight that starts the day containing the given time
+     */
+    public static long normalize(long millis) {
+        return getStartOfDay(getDayIndex(millis));
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A copy of the preferred location's forecast in a small binary file, written by the sync after
+ * each update.  Reading it maps the file instead of opening the database, so the forecast list's
+ * first frame, the widgets and Muzei can show the forecast without waiting for SQLite.
+ * <p>
+ * The file is replaced as a whole by renaming a finished temporary file over it, so readers
+ * always see either the old or the new forecast.  A reader that finds no file, another version
+ * of the format, or a different location gets null and should query the provider instead.
+ * <p>
+ * Layout, big endian: magic, version, location setting, latitude, longitude, day count, then
+ * for each day its date, weather id, high, low, humidity, pressure, wind speed, wind direction
+ * and short description.  Strings are modified UTF-8, prefixed with their length.
+ */
+public final class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast.snapshot";
+    private static final int MAGIC = 0x53554e53;
+    // Bump this whenever the layout changes; older files are then ignored until rewritten
+    private static final int VERSION = 1;
+
+    private final String mLocationSetting;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final float[] mHumidities;
+    private final float[] mPressures;
+    private final float[] mWindSpeeds;
+    private final float[] mWindDirections;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(MappedByteBuffer buffer) throws UnsupportedEncodingException {
+        mLocationSetting = getString(buffer);
+        mLatitude = buffer.getDouble();
+        mLongitude = buffer.getDouble();
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mHighs = new double[count];
+        mLows = new double[count];
+        mHumidities = new float[count];
+        mPressures = new float[count];
+        mWindSpeeds = new float[count];
+        mWindDirections = new float[count];
+        mDescriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            mDates[i] = buffer.getLong();
+            mWeatherIds[i] = buffer.getInt();
+            mHighs[i] = buffer.getDouble();
+            mLows[i] = buffer.getDouble();
+            mHumidities[i] = buffer.getFloat();
+            mPressures[i] = buffer.getFloat();
+            mWindSpeeds[i] = buffer.getFloat();
+            mWindDirections[i] = buffer.getFloat();
+            mDescriptions[i] = getString(buffer);
+        }
+    }
+
+    private static String getString(MappedByteBuffer buffer) throws UnsupportedEncodingException {
+        int length = buffer.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        // Modified UTF-8 only differs from UTF-8 for characters the forecast doesn't contain
+        return new String(bytes, "UTF-8");
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Replaces the snapshot with the forecast the sync just stored.
+     *
+     * @param days the weather rows, in date order, with the columns the sync inserts
+     */
+    public static void write(Context context, String locationSetting, double latitude,
+                             double longitude, ContentValues[] days) {
+        File file = getFile(context);
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream fileStream = null;
+        try {
+            fileStream = new FileOutputStream(tempFile);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileStream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(locationSetting);
+            out.writeDouble(latitude);
+            out.writeDouble(longitude);
+            out.writeInt(days.length);
+            for (ContentValues day : days) {
+                out.writeLong(day.getAsLong(WeatherEntry.COLUMN_DATE));
+                out.writeInt(day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+                out.writeDouble(day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP));
+                out.writeDouble(day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+                out.writeFloat(day.getAsFloat(WeatherEntry.COLUMN_HUMIDITY));
+                out.writeFloat(day.getAsFloat(WeatherEntry.COLUMN_PRESSURE));
+                out.writeFloat(day.getAsFloat(WeatherEntry.COLUMN_WIND_SPEED));
+                out.writeFloat(day.getAsFloat(WeatherEntry.COLUMN_DEGREES));
+                out.writeUTF(day.getAsString(WeatherEntry.COLUMN_SHORT_DESC));
+            }
+            out.flush();
+            // Make sure the data is on disk before the rename makes it visible
+            fileStream.getFD().sync();
+            out.close();
+            fileStream = null;
+            if (!tempFile.renameTo(file)) {
+                Log.e(LOG_TAG, "Couldn't replace " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + tempFile, e);
+        } finally {
+            if (fileStream != null) {
+                try {
+                    fileStream.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tempFile, e);
+                }
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the snapshot, for when the forecast it holds is no longer the preferred one.
+     */
+    public static void delete(Context context) {
+        getFile(context).delete();
+    }
+
+    /**
+     * @param locationSetting the location the forecast is wanted for
+     * @return the snapshot, or null if there is no usable snapshot for the location
+     */
+    public static ForecastSnapshot read(Context context, String locationSetting) {
+        File file = getFile(context);
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            ForecastSnapshot snapshot = new ForecastSnapshot(buffer);
+            return snapshot.mLocationSetting.equals(locationSetting) ? snapshot : null;
+        } catch (IOException e) {
+            // Most likely there hasn't been a sync yet
+            return null;
+        } catch (BufferUnderflowException e) {
+            Log.e(LOG_TAG, file + " is truncated", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds a cursor over the days from the given date on, like the one the provider returns
+     * for {@link WeatherEntry#buildWeatherLocationWithStartDate}, sorted by ascending date.
+     *
+     * @param projection the columns wanted; weather and location columns, optionally qualified
+     *                   with their table name
+     * @return the cursor, or null if the snapshot doesn't have one of the columns
+     */
+    public Cursor query(String[] projection, long startDate) {
+        long normalizedStartDate = WeatherContract.normalizeDate(startDate);
+        MatrixCursor cursor = new MatrixCursor(projection, mDates.length);
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < mDates.length; i++) {
+            if (mDates[i] < normalizedStartDate) {
+                continue;
+            }
+            for (int column = 0; column < projection.length; column++) {
+                String name = projection[column];
+                // Drop the table name of qualified columns, like "weather._id"
+                name = name.substring(name.lastIndexOf('.') + 1);
+                Object value = getValue(name, i);
+                if (null == value) {
+                    return null;
+                }
+                values[column] = value;
+            }
+            cursor.addRow(values);
+        }
+        return cursor;
+    }
+
+    /**
+     * Queries the forecast of a location from the given date on, sorted by ascending date.
+     * Served from the snapshot when it covers the location and the columns, otherwise from the
+     * provider.
+     *
+     * @return the cursor, or null if the provider query failed
+     */
+    public static Cursor queryForecast(Context context, String locationSetting,
+                                       String[] projection, long startDate) {
+        ForecastSnapshot snapshot = read(context, locationSetting);
+        if (null != snapshot) {
+            Cursor cursor = snapshot.query(projection, startDate);
+            if (null != cursor && cursor.getCount() > 0) {
+                return cursor;
+            }
+        }
+        return context.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, startDate),
+                projection,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    private Object getValue(String column, int day) {
+        if (WeatherEntry._ID.equals(column)) {
+            // Not the row's id in the database, but unique among the days
+            return day + 1;
+        } else if (WeatherEntry.COLUMN_DATE.equals(column)) {
+            return mDates[day];
+        } else if (WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+            return mWeatherIds[day];
+        } else if (WeatherEntry.COLUMN_MAX_TEMP.equals(column)) {
+            return mHighs[day];
+        } else if (WeatherEntry.COLUMN_MIN_TEMP.equals(column)) {
+            return mLows[day];
+        } else if (WeatherEntry.COLUMN_HUMIDITY.equals(column)) {
+            return mHumidities[day];
+        } else if (WeatherEntry.COLUMN_PRESSURE.equals(column)) {
+            return mPressures[day];
+        } else if (WeatherEntry.COLUMN_WIND_SPEED.equals(column)) {
+            return mWindSpeeds[day];
+        } else if (WeatherEntry.COLUMN_DEGREES.equals(column)) {
+            return mWindDirections[day];
+        } else if (WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+            return mDescriptions[day];
+        } else if (LocationEntry.COLUMN_LOCATION_SETTING.equals(column)) {
+            return mLocationSetting;
+        } else if (LocationEntry.COLUMN_COORD_LAT.equals(column)) {
+            return mLatitude;
+        } else if (LocationEntry.COLUMN_COORD_LONG.equals(column)) {
+            return mLongitude;
+        }
+        return null;
+    }
+}
@@ -19,7 +19,6 @@ import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
-import android.text.format.Time;
 
 /**
  * Defines table and column names for the weather database.
@@ -43,15 +42,18 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_UPSERT = "upsert";
+    public static final String PATH_NEAREST = "nearest";
+    public static final String PATH_FRESHNESS = "freshness";
+    public static final String PATH_SYNC_JOURNAL = "sync_journal";
+    public static final String PATH_MAINTENANCE = "maintenance";
+    public static final String PATH_COMPACT = "compact";
+    public static final String PATH_AGGREGATE = "aggregate";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
-    // the database to the start of the the Julian day at UTC.
+    // the database to the start of the the Julian day in the local time zone.
     public static long normalizeDate(long startDate) {
-        // normalize the start date to the beginning of the (UTC) day
-        Time time = new Time();
-        time.set(startDate);
-        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
-        return time.setJulianDay(julianDay);
+        return DayIndex.normalize(startDate);
     }
 
     /* Inner class that defines the table contents of the location table */
@@ -81,9 +83,243 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // The cell of a grid of COORD_BUCKET_DEGREES wide squares the coordinates fall in, set
+        // by the provider.  Indexed, so that the nearest location is found without a scan.
+        public static final String COLUMN_COORD_BUCKET = "coord_bucket";
+        public static final double COORD_BUCKET_DEGREES = 0.25;
+        static final int COORD_BUCKET_COLUMNS = (int) (360 / COORD_BUCKET_DEGREES);
+
+        // Query parameter of the nearest uri
+        public static final String PARAM_RADIUS_KM = "radius_km";
+
+        // When the forecast for this location was last fetched, and until when it is considered
+        // fresh enough to skip another fetch.  Both stored as milliseconds since the epoch.
+        public static final String COLUMN_LAST_SYNCED = "last_synced";
+        public static final String COLUMN_EXPIRES_AT = "expires_at";
+
+        // Identifies the API (and API version) the stored forecast was fetched from.
+        public static final String COLUMN_SOURCE_VERSION = "source_version";
+
+        // How many days of past forecasts to keep for this location, and for how many days
+        // beyond that to keep one forecast per week as history.  Rows outside both are removed
+        // by the maintenance uri.
+        public static final String COLUMN_RETENTION_DAYS = "retention_days";
+        public static final String COLUMN_HISTORY_DAYS = "history_days";
+
+        // When the location was last synced or switched to, in milliseconds since the epoch.
+        // Only the most recently accessed locations are kept by the maintenance uri.
+        public static final String COLUMN_LAST_ACCESSED = "last_accessed";
+
+        // Computed by the freshness uri: 1 if the forecast hasn't expired yet, 0 otherwise.
+        public static final String COLUMN_IS_FRESH = "is_fresh";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        // Inserting into this uri adds the location only if its location setting is not
+        // already stored, and returns the uri of the row either way.
+        public static Uri buildLocationUpsertUri() {
+            return CONTENT_URI.buildUpon().appendPath(PATH_UPSERT).build();
+        }
+
+        public static Uri buildLocationFreshnessUri(String locationSetting) {
+            return BASE_CONTENT_URI.buildUpon().appendPath(PATH_FRESHNESS)
+                    .appendPath(locationSetting).build();
+        }
+
+        public static String getLocationSettingFromFreshnessUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        // Querying this uri returns the stored location closest to the coordinates, if one lies
+        // within the radius.
+        public static Uri buildNearestLocationUri(double lat, double lon, double radiusKm) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAREST)
+                    .appendQueryParameter(COLUMN_COORD_LAT, Double.toString(lat))
+                    .appendQueryParameter(COLUMN_COORD_LONG, Double.toString(lon))
+                    .appendQueryParameter(PARAM_RADIUS_KM, Double.toString(radiusKm)).build();
+        }
+
+        public static double getCoordParameterFromUri(Uri uri, String parameter) {
+            return Double.parseDouble(uri.getQueryParameter(parameter));
+        }
+
+        /**
+         * @return the coordinate bucket of a latitude and longitude, row by row from the south
+         * pole and the antimeridian
+         */
+        public static int getCoordBucket(double lat, double lon) {
+            int row = (int) Math.floor((lat + 90) / COORD_BUCKET_DEGREES);
+            int column = (int) Math.floor((lon + 180) / COORD_BUCKET_DEGREES);
+            return row * COORD_BUCKET_COLUMNS + Math.min(column, COORD_BUCKET_COLUMNS - 1);
+        }
+
+        /**
+         * Reduces a location setting to the key it is stored under, so that "London",
+         * " london " and "London, UK" share one row and one fetch.  The key is lower case,
+         * without accents, with single spaces between words and none around commas.
+         *
+         * @param locationSetting the location as typed by the user
+         * @return the canonical location setting
+         */
+        public static String canonicalizeLocationSetting(String locationSetting) {
+            String[] parts = locationSetting.split(",", -1);
+            StringBuilder key = new StringBuilder(locationSetting.length());
+            for (int i = 0; i < parts.length; i++) {
+                String part = CityIndex.normalize(parts[i]);
+                // ISO 3166 reserves UK for the United Kingdom, whose code is GB
+                if (i > 0 && part.equals("uk")) {
+                    part = "gb";
+                }
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(part);
+            }
+            return key.toString();
+        }
+    }
+
+    /* Inner class that defines the table contents of the sync journal table */
+    public static final class SyncJournalEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_JOURNAL).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_JOURNAL;
+
+        public static final String TABLE_NAME = "sync_journal";
+
+        // The location setting the sync run is fetching.  There is one journal row per location,
+        // describing its most recent sync run.
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // The last phase the run completed, one of the PHASE_ constants below
+        public static final String COLUMN_PHASE = "phase";
+
+        // Hash of the fetched server response, to tell whether a new response changes anything
+        public static final String COLUMN_PAYLOAD_HASH = "payload_hash";
+
+        // The fetched server response.  Only kept until it has been committed to the database.
+        public static final String COLUMN_PAYLOAD = "payload";
+
+        // When the run last advanced, stored as milliseconds since the epoch
+        public static final String COLUMN_UPDATED = "updated";
+
+        // The response has been fetched, but not yet written to the weather table
+        public static final int PHASE_FETCHED = 1;
+        // The response has been written, but widgets, wear, Muzei and notifications weren't told
+        public static final int PHASE_COMMITTED = 2;
+        // Everything has been told about the new data; the run is complete
+        public static final int PHASE_FANNED_OUT = 3;
+    }
+
+    /* Inner class that defines the uris of the database maintenance tasks */
+    public static final class MaintenanceEntry {
+
+        // Deleting from this uri removes the weather rows that fall outside the retention
+        // horizon of their location, and returns the number of rows removed.  It also drops
+        // every location beyond the most recently accessed few, along with their data.
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_MAINTENANCE).build();
+
+        // Deleting from this uri does the same, then analyzes the database and gives the space
+        // freed by deleted rows back to the file system.  Too slow to run on every sync.
+        public static Uri buildCompactUri() {
+            return CONTENT_URI.buildUpon().appendPath(PATH_COMPACT).build();
+        }
+    }
+
+    /* Inner class that defines the table contents of the archive table */
+    public static final class ArchiveEntry implements BaseColumns {
+
+        // The archive keeps the last forecast stored for every day of every location, long after
+        // the weather table has dropped it.  It is only written by the provider, while weather
+        // rows are inserted, and is read through the aggregate uris.
+        public static final String TABLE_NAME = "archive";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // Date, stored as long in milliseconds since the epoch
+        public static final String COLUMN_DATE = "date";
+        // The dates of the first day of the week and of the month that contain the date, which
+        // partition the archive for the rollups
+        public static final String COLUMN_WEEK_START = "week_start";
+        public static final String COLUMN_MONTH_START = "month_start";
+
+        // Weather id as returned by API
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        // Min and max temperatures for the day (stored as floats)
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+    }
+
+    /* Inner class that defines the table contents of the aggregate table */
+    public static final class AggregateEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_AGGREGATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_AGGREGATE;
+
+        // Weekly and monthly rollups of the archive, recomputed for the affected weeks and
+        // months whenever weather rows are inserted.
+        public static final String TABLE_NAME = "aggregate";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+
+        // The length of the period, either PERIOD_WEEK or PERIOD_MONTH
+        public static final String COLUMN_PERIOD = "period";
+        // Date of the first day of the period, stored as long in milliseconds since the epoch
+        public static final String COLUMN_PERIOD_START = "period_start";
+
+        // Number of archived days in the period
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Lowest min, highest max and average of the daily mean temperatures (stored as floats)
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+        public static final String COLUMN_AVG_TEMP = "avg";
+
+        // Number of days with thunderstorm, drizzle or rain
+        public static final String COLUMN_RAIN_DAYS = "rain_days";
+
+        // The weather id that occurs on the most days of the period
+        public static final String COLUMN_DOMINANT_WEATHER_ID = "dominant_weather_id";
+
+        public static final String PERIOD_WEEK = "week";
+        public static final String PERIOD_MONTH = "month";
+
+        public static Uri buildAggregateUri(String locationSetting, String period) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(period).build();
+        }
+
+        public static Uri buildAggregateUriWithStartDate(
+                String locationSetting, String period, long startDate) {
+            return buildAggregateUri(locationSetting, period).buildUpon()
+                    .appendQueryParameter(COLUMN_PERIOD_START, Long.toString(startDate)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(COLUMN_PERIOD_START);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
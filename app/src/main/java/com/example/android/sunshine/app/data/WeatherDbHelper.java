@@ -19,7 +19,10 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.AggregateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ArchiveEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -28,7 +31,7 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 8;
 
     static final String DATABASE_NAME = "weather.db";
 
@@ -45,9 +48,20 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_COORD_BUCKET + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_LAST_SYNCED + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_EXPIRES_AT + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_SOURCE_VERSION + " TEXT, " +
+                LocationEntry.COLUMN_RETENTION_DAYS + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_HISTORY_DAYS + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_LAST_ACCESSED + " INTEGER NOT NULL DEFAULT 0 " +
                 " );";
 
+        // Lookups of the nearest location only read the buckets around a point
+        final String SQL_CREATE_LOCATION_BUCKET_INDEX = "CREATE INDEX location_coord_bucket ON " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_COORD_BUCKET + ");";
+
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Why AutoIncrement here, and not above?
                 // Unique keys will be auto-generated in either case.  But for weather
@@ -79,8 +93,69 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
+        // The sync journal records how far the last sync of each location got, so that an
+        // interrupted sync can be finished without fetching the forecast again.
+        final String SQL_CREATE_SYNC_JOURNAL_TABLE = "CREATE TABLE " + SyncJournalEntry.TABLE_NAME + " (" +
+                SyncJournalEntry._ID + " INTEGER PRIMARY KEY," +
+                SyncJournalEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL ON CONFLICT REPLACE, " +
+                SyncJournalEntry.COLUMN_PHASE + " INTEGER NOT NULL, " +
+                SyncJournalEntry.COLUMN_PAYLOAD_HASH + " TEXT NOT NULL, " +
+                SyncJournalEntry.COLUMN_PAYLOAD + " TEXT, " +
+                SyncJournalEntry.COLUMN_UPDATED + " INTEGER NOT NULL " +
+                " );";
+
+        // The archive keeps one row per day and location.  Rollups are recomputed a week or a
+        // month at a time, so both partitions are indexed.
+        final String SQL_CREATE_ARCHIVE_TABLE = "CREATE TABLE " + ArchiveEntry.TABLE_NAME + " (" +
+                ArchiveEntry._ID + " INTEGER PRIMARY KEY," +
+                ArchiveEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_WEEK_START + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_MONTH_START + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                ArchiveEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                ArchiveEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                " FOREIGN KEY (" + ArchiveEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                ArchiveEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        final String SQL_CREATE_ARCHIVE_MONTH_INDEX = "CREATE INDEX archive_month ON " +
+                ArchiveEntry.TABLE_NAME + " (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                ArchiveEntry.COLUMN_MONTH_START + ");";
+        final String SQL_CREATE_ARCHIVE_WEEK_INDEX = "CREATE INDEX archive_week ON " +
+                ArchiveEntry.TABLE_NAME + " (" + ArchiveEntry.COLUMN_LOC_KEY + ", " +
+                ArchiveEntry.COLUMN_WEEK_START + ");";
+
+        final String SQL_CREATE_AGGREGATE_TABLE = "CREATE TABLE " + AggregateEntry.TABLE_NAME + " (" +
+                AggregateEntry._ID + " INTEGER PRIMARY KEY," +
+                AggregateEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_PERIOD + " TEXT NOT NULL, " +
+                AggregateEntry.COLUMN_PERIOD_START + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_AVG_TEMP + " REAL NOT NULL, " +
+                AggregateEntry.COLUMN_RAIN_DAYS + " INTEGER NOT NULL, " +
+                AggregateEntry.COLUMN_DOMINANT_WEATHER_ID + " INTEGER NOT NULL, " +
+                " FOREIGN KEY (" + AggregateEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + AggregateEntry.COLUMN_LOC_KEY + ", " +
+                AggregateEntry.COLUMN_PERIOD + ", " +
+                AggregateEntry.COLUMN_PERIOD_START + ") ON CONFLICT REPLACE);";
+
+        // auto_vacuum can't be set here: SQLiteOpenHelper has already created android_metadata
+        // and runs onCreate in a transaction.  The first compaction of the maintenance uri
+        // switches the database to incremental vacuum.
+
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_BUCKET_INDEX);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_JOURNAL_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_MONTH_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_ARCHIVE_WEEK_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_AGGREGATE_TABLE);
     }
 
     @Override
@@ -93,6 +168,9 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
         // should be your top priority before modifying this method.
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncJournalEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ArchiveEntry.TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + AggregateEntry.TABLE_NAME);
         onCreate(sqLiteDatabase);
     }
 }
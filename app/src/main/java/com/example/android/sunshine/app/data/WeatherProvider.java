@@ -17,15 +17,25 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
@@ -34,6 +44,37 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_UPSERT = 301;
+    static final int LOCATION_NEAREST = 302;
+    static final int FRESHNESS_WITH_LOCATION = 400;
+    static final int SYNC_JOURNAL = 500;
+    static final int MAINTENANCE = 600;
+    static final int MAINTENANCE_COMPACT = 601;
+    static final int AGGREGATE_WITH_LOCATION_AND_PERIOD = 700;
+
+    // Upper bound on the rows removed per retention transaction, so that a large pass never
+    // holds the database lock for long
+    private static final int RETENTION_BATCH_SIZE = 500;
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long WEEK_IN_MILLIS = DAY_IN_MILLIS * 7;
+
+    // How many locations the maintenance uri keeps, by last access, so that switching back to
+    // a recent location finds its forecast in place
+    static final int MAX_CACHED_LOCATIONS = 8;
+
+    // Length of a degree of latitude, and of longitude at the equator
+    private static final double KM_PER_DEGREE = 111.32;
+
+    // How long archived days are kept, well beyond the retention horizon of any location
+    private static final long ARCHIVE_MILLIS = DAY_IN_MILLIS * 400;
+
+    // Value of PRAGMA auto_vacuum once incremental vacuum is enabled
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+
+    // location_setting -> _id, so that repeated syncs of the same location don't hit the
+    // database at all.  Cleared whenever rows of the location table are deleted or updated.
+    private final HashMap<String, Long> mLocationIdCache = new HashMap<String, Long>();
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
@@ -68,6 +109,229 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    private static final SQLiteQueryBuilder sAggregateByLocationSettingQueryBuilder;
+
+    static{
+        sAggregateByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+
+        //aggregate INNER JOIN location ON aggregate.location_id = location._id
+        sAggregateByLocationSettingQueryBuilder.setTables(
+                WeatherContract.AggregateEntry.TABLE_NAME + " INNER JOIN " +
+                        WeatherContract.LocationEntry.TABLE_NAME +
+                        " ON " + WeatherContract.AggregateEntry.TABLE_NAME +
+                        "." + WeatherContract.AggregateEntry.COLUMN_LOC_KEY +
+                        " = " + WeatherContract.LocationEntry.TABLE_NAME +
+                        "." + WeatherContract.LocationEntry._ID);
+    }
+
+    //location.location_setting = ? AND period = ?
+    private static final String sLocationSettingAndPeriodSelection =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD + " = ? ";
+
+    //location.location_setting = ? AND period = ? AND period_start >= ?
+    private static final String sLocationSettingAndPeriodWithStartDateSelection =
+            sLocationSettingAndPeriodSelection + "AND " +
+                    WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " >= ? ";
+
+    private static final String sWeeklyRollupSql = buildRollupSql(
+            WeatherContract.AggregateEntry.PERIOD_WEEK,
+            WeatherContract.ArchiveEntry.COLUMN_WEEK_START);
+    private static final String sMonthlyRollupSql = buildRollupSql(
+            WeatherContract.AggregateEntry.PERIOD_MONTH,
+            WeatherContract.ArchiveEntry.COLUMN_MONTH_START);
+
+    /**
+     * Builds the statement that recomputes the rollups of one location for every period that
+     * starts within a range of dates.  The arguments are the location id and the range.
+     *
+     * @param period      the period stored in the aggregate rows
+     * @param startColumn the archive column holding the start of the period
+     */
+    private static String buildRollupSql(String period, String startColumn) {
+        return "INSERT INTO " + WeatherContract.AggregateEntry.TABLE_NAME + " (" +
+                WeatherContract.AggregateEntry.COLUMN_LOC_KEY + ", " +
+                WeatherContract.AggregateEntry.COLUMN_PERIOD + ", " +
+                WeatherContract.AggregateEntry.COLUMN_PERIOD_START + ", " +
+                WeatherContract.AggregateEntry.COLUMN_DAY_COUNT + ", " +
+                WeatherContract.AggregateEntry.COLUMN_MIN_TEMP + ", " +
+                WeatherContract.AggregateEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherContract.AggregateEntry.COLUMN_AVG_TEMP + ", " +
+                WeatherContract.AggregateEntry.COLUMN_RAIN_DAYS + ", " +
+                WeatherContract.AggregateEntry.COLUMN_DOMINANT_WEATHER_ID + ")" +
+                " SELECT a." + WeatherContract.ArchiveEntry.COLUMN_LOC_KEY +
+                ", '" + period + "', a." + startColumn +
+                ", COUNT(*), MIN(a." + WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP +
+                "), MAX(a." + WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP +
+                "), AVG((a." + WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP + " + a." +
+                WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP + ") / 2.0)" +
+                // thunderstorm (2xx), drizzle (3xx) and rain (5xx) count as rainy days
+                ", SUM(a." + WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + " >= 200 AND a." +
+                WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + " < 600)" +
+                ", (SELECT d." + WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + " FROM " +
+                WeatherContract.ArchiveEntry.TABLE_NAME + " d WHERE d." +
+                WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + " = a." +
+                WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + " AND d." + startColumn +
+                " = a." + startColumn + " GROUP BY d." +
+                WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + " ORDER BY COUNT(*) DESC, d." +
+                WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID + " DESC LIMIT 1)" +
+                " FROM " + WeatherContract.ArchiveEntry.TABLE_NAME + " a WHERE a." +
+                WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + " = ? AND a." + startColumn +
+                " BETWEEN ? AND ? GROUP BY a." + startColumn;
+    }
+
+    //location.location_setting = ?
+    private static final String sLocationSettingOnlySelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    // A batch of weather rows older than their location's retention horizon, except for the
+    // first row of each week while it is still within the location's history horizon.
+    // Stored dates are local midnights, which aren't always exactly a day apart, so both
+    // horizons get half a day of slack.  Both arguments are the date of today.
+    private static final String sExpiredWeatherSelection =
+            WeatherContract.WeatherEntry._ID + " IN (SELECT w." + WeatherContract.WeatherEntry._ID +
+                    " FROM " + WeatherContract.WeatherEntry.TABLE_NAME + " w INNER JOIN " +
+                    WeatherContract.LocationEntry.TABLE_NAME + " l ON w." +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = l." +
+                    WeatherContract.LocationEntry._ID +
+                    " WHERE w." + WeatherContract.WeatherEntry.COLUMN_DATE + " < ? - l." +
+                    WeatherContract.LocationEntry.COLUMN_RETENTION_DAYS + " * " + DAY_IN_MILLIS +
+                    " - " + DAY_IN_MILLIS / 2 +
+                    " AND (w." + WeatherContract.WeatherEntry.COLUMN_DATE + " < ? - (l." +
+                    WeatherContract.LocationEntry.COLUMN_RETENTION_DAYS + " + l." +
+                    WeatherContract.LocationEntry.COLUMN_HISTORY_DAYS + ") * " + DAY_IN_MILLIS +
+                    " - " + DAY_IN_MILLIS / 2 +
+                    " OR w." + WeatherContract.WeatherEntry.COLUMN_DATE + " > (SELECT MIN(h." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM " +
+                    WeatherContract.WeatherEntry.TABLE_NAME + " h WHERE h." +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = w." +
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " AND h." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " / " + WEEK_IN_MILLIS + " = w." +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " / " + WEEK_IN_MILLIS + "))" +
+                    " LIMIT " + RETENTION_BATCH_SIZE + ")";
+
+    private Cursor getFreshnessByLocationSetting(Uri uri, String[] projection) {
+        String locationSetting =
+                WeatherContract.LocationEntry.getLocationSettingFromFreshnessUri(uri);
+        if (null == projection) {
+            projection = new String[]{
+                    WeatherContract.LocationEntry._ID,
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                    WeatherContract.LocationEntry.COLUMN_LAST_SYNCED,
+                    WeatherContract.LocationEntry.COLUMN_EXPIRES_AT,
+                    WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION,
+                    WeatherContract.LocationEntry.COLUMN_IS_FRESH
+            };
+        }
+
+        // is_fresh isn't stored; it's computed against the current time
+        String[] columns = new String[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (WeatherContract.LocationEntry.COLUMN_IS_FRESH.equals(projection[i])) {
+                columns[i] = "(" + WeatherContract.LocationEntry.COLUMN_EXPIRES_AT + " > " +
+                        System.currentTimeMillis() + ") AS " +
+                        WeatherContract.LocationEntry.COLUMN_IS_FRESH;
+            } else {
+                columns[i] = projection[i];
+            }
+        }
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                columns,
+                sLocationSettingOnlySelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null
+        );
+    }
+
+    /**
+     * Finds the stored location closest to the coordinates of the uri, within its radius.  Only
+     * the coordinate buckets the radius overlaps are read, a range of buckets per grid row, and
+     * distances are measured on a plane tangent to the point, which is accurate well beyond the
+     * few kilometres the radius is meant for.  The search doesn't wrap around the antimeridian.
+     */
+    private Cursor getNearestLocation(Uri uri, String[] projection) {
+        double lat = WeatherContract.LocationEntry.getCoordParameterFromUri(uri,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT);
+        double lon = WeatherContract.LocationEntry.getCoordParameterFromUri(uri,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG);
+        double radiusKm = WeatherContract.LocationEntry.getCoordParameterFromUri(uri,
+                WeatherContract.LocationEntry.PARAM_RADIUS_KM);
+
+        double latRadius = radiusKm / KM_PER_DEGREE;
+        double lonScale = Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        double lonRadius = Math.min(latRadius / lonScale, 180);
+
+        int columns = WeatherContract.LocationEntry.COORD_BUCKET_COLUMNS;
+        int firstBucket = WeatherContract.LocationEntry.getCoordBucket(
+                Math.max(lat - latRadius, -90), Math.max(lon - lonRadius, -180));
+        int lastBucket = WeatherContract.LocationEntry.getCoordBucket(
+                Math.min(lat + latRadius, 90), Math.min(lon + lonRadius, 180));
+        int firstColumn = firstBucket % columns;
+        int lastColumn = lastBucket % columns;
+
+        StringBuilder selection = new StringBuilder("(");
+        for (int row = firstBucket / columns; row <= lastBucket / columns; row++) {
+            if (selection.length() > 1) {
+                selection.append(" OR ");
+            }
+            selection.append(WeatherContract.LocationEntry.COLUMN_COORD_BUCKET)
+                    .append(" BETWEEN ").append(row * columns + firstColumn)
+                    .append(" AND ").append(row * columns + lastColumn);
+        }
+
+        // Squared distance in degrees of latitude
+        String distance = "((" + WeatherContract.LocationEntry.COLUMN_COORD_LAT + " - " + lat +
+                ") * (" + WeatherContract.LocationEntry.COLUMN_COORD_LAT + " - " + lat +
+                ") + (" + WeatherContract.LocationEntry.COLUMN_COORD_LONG + " - " + lon +
+                ") * (" + WeatherContract.LocationEntry.COLUMN_COORD_LONG + " - " + lon +
+                ") * " + lonScale * lonScale + ")";
+        selection.append(") AND ").append(distance).append(" <= ")
+                .append(latRadius * latRadius);
+
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                projection,
+                selection.toString(),
+                null,
+                null,
+                null,
+                distance,
+                "1"
+        );
+    }
+
+    private Cursor getAggregatesByLocationSetting(Uri uri, String[] projection, String sortOrder) {
+        String locationSetting = WeatherContract.AggregateEntry.getLocationSettingFromUri(uri);
+        String period = WeatherContract.AggregateEntry.getPeriodFromUri(uri);
+        long startDate = WeatherContract.AggregateEntry.getStartDateFromUri(uri);
+
+        String[] selectionArgs;
+        String selection;
+
+        if (startDate == 0) {
+            selection = sLocationSettingAndPeriodSelection;
+            selectionArgs = new String[]{locationSetting, period};
+        } else {
+            selection = sLocationSettingAndPeriodWithStartDateSelection;
+            selectionArgs = new String[]{locationSetting, period, Long.toString(startDate)};
+        }
+
+        return sAggregateByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                null == sortOrder ?
+                        WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " ASC" : sortOrder
+        );
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -130,6 +394,21 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_UPSERT, LOCATION_UPSERT);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" +
+                WeatherContract.PATH_NEAREST, LOCATION_NEAREST);
+
+        matcher.addURI(authority, WeatherContract.PATH_FRESHNESS + "/*", FRESHNESS_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_JOURNAL, SYNC_JOURNAL);
+
+        matcher.addURI(authority, WeatherContract.PATH_MAINTENANCE, MAINTENANCE);
+        matcher.addURI(authority, WeatherContract.PATH_MAINTENANCE + "/" +
+                WeatherContract.PATH_COMPACT, MAINTENANCE_COMPACT);
+
+        matcher.addURI(authority, WeatherContract.PATH_AGGREGATE + "/*/*",
+                AGGREGATE_WITH_LOCATION_AND_PERIOD);
         return matcher;
     }
 
@@ -164,6 +443,20 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_UPSERT:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case LOCATION_NEAREST:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case FRESHNESS_WITH_LOCATION:
+                return WeatherContract.LocationEntry.CONTENT_ITEM_TYPE;
+            case SYNC_JOURNAL:
+                return WeatherContract.SyncJournalEntry.CONTENT_TYPE;
+            case AGGREGATE_WITH_LOCATION_AND_PERIOD:
+                return WeatherContract.AggregateEntry.CONTENT_TYPE;
+            case MAINTENANCE:
+            case MAINTENANCE_COMPACT:
+                // Nothing can be read from the maintenance uris
+                return null;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +506,34 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "location/nearest"
+            case LOCATION_NEAREST: {
+                retCursor = getNearestLocation(uri, projection);
+                break;
+            }
+            // "freshness/*"
+            case FRESHNESS_WITH_LOCATION: {
+                retCursor = getFreshnessByLocationSetting(uri, projection);
+                break;
+            }
+            // "aggregate/*/*"
+            case AGGREGATE_WITH_LOCATION_AND_PERIOD: {
+                retCursor = getAggregatesByLocationSetting(uri, projection, sortOrder);
+                break;
+            }
+            // "sync_journal"
+            case SYNC_JOURNAL: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.SyncJournalEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -241,6 +562,7 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                addCoordBucket(values);
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -248,6 +570,27 @@ public class WeatherProvider extends ContentProvider {
                     throw new android.database.SQLException("Failed to insert row into " + uri);
                 break;
             }
+            case SYNC_JOURNAL: {
+                // location_setting is declared ON CONFLICT REPLACE, so this also overwrites
+                // the previous run of the same location
+                long _id = db.insert(WeatherContract.SyncJournalEntry.TABLE_NAME, null, values);
+                if ( _id > 0 )
+                    returnUri = ContentUris.withAppendedId(
+                            WeatherContract.SyncJournalEntry.CONTENT_URI, _id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+                break;
+            }
+            case LOCATION_UPSERT: {
+                // Notifications for new rows are sent from upsertLocation itself, since an
+                // upsert of an already stored location changes nothing.
+                addCoordBucket(values);
+                long _id = upsertLocation(values);
+                if ( _id > 0 )
+                    return WeatherContract.LocationEntry.buildLocationUri(_id);
+                else
+                    throw new android.database.SQLException("Failed to insert row into " + uri);
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -255,6 +598,60 @@ public class WeatherProvider extends ContentProvider {
         return returnUri;
     }
 
+    /**
+     * Inserts the location unless a row with the same location setting already exists, and
+     * returns the row id in either case.  The INSERT OR IGNORE and the id lookup run in a single
+     * transaction, so two syncs racing on the same location always agree on the row.
+     *
+     * @param values location values, which must include the location setting
+     * @return the row id of the location, or -1 if it couldn't be inserted
+     */
+    private long upsertLocation(ContentValues values) {
+        String locationSetting =
+                values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        synchronized (mLocationIdCache) {
+            Long cachedId = mLocationIdCache.get(locationSetting);
+            if (null != cachedId) {
+                return cachedId;
+            }
+
+            final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+            long locationId = -1;
+            boolean inserted;
+            db.beginTransaction();
+            try {
+                inserted = db.insertWithOnConflict(WeatherContract.LocationEntry.TABLE_NAME,
+                        null, values, SQLiteDatabase.CONFLICT_IGNORE) != -1;
+                Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                        new String[]{WeatherContract.LocationEntry._ID},
+                        sLocationSettingOnlySelection,
+                        new String[]{locationSetting},
+                        null,
+                        null,
+                        null);
+                try {
+                    if (cursor.moveToFirst()) {
+                        locationId = cursor.getLong(0);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (locationId != -1) {
+                mLocationIdCache.put(locationSetting, locationId);
+            }
+            if (inserted) {
+                getContext().getContentResolver().notifyChange(
+                        WeatherContract.LocationEntry.CONTENT_URI, null);
+            }
+            return locationId;
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -268,9 +665,33 @@ public class WeatherProvider extends ContentProvider {
                         WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
                 break;
             case LOCATION:
+                synchronized (mLocationIdCache) {
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    mLocationIdCache.clear();
+                }
+                // Location ids are reused, so the history of deleted locations has to go too
+                deleteOrphanedHistory(db);
+                break;
+            case SYNC_JOURNAL:
                 rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                        WeatherContract.SyncJournalEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case MAINTENANCE:
+            case MAINTENANCE_COMPACT: {
+                rowsDeleted = evictLeastRecentLocations(db);
+                rowsDeleted += deleteExpiredWeather(db);
+                deleteExpiredHistory(db);
+                if (match == MAINTENANCE_COMPACT) {
+                    compactDatabase(db);
+                }
+                // Observers are interested in the weather rows, not in the maintenance uri
+                if (rowsDeleted != 0) {
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.WeatherEntry.CONTENT_URI, null);
+                }
+                return rowsDeleted;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -281,6 +702,126 @@ public class WeatherProvider extends ContentProvider {
         return rowsDeleted;
     }
 
+    /**
+     * Deletes the locations beyond the {@link #MAX_CACHED_LOCATIONS} most recently accessed
+     * ones, together with their weather rows and sync journal.  Their archive goes with the
+     * orphaned history.
+     *
+     * @return the number of weather rows deleted
+     */
+    private int evictLeastRecentLocations(SQLiteDatabase db) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null,
+                null,
+                WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED + " DESC",
+                // offset, limit: everything past the locations to keep
+                MAX_CACHED_LOCATIONS + ", " + Integer.MAX_VALUE);
+        int weatherDeleted = 0;
+        try {
+            if (cursor.getCount() == 0) {
+                return 0;
+            }
+            synchronized (mLocationIdCache) {
+                db.beginTransaction();
+                try {
+                    while (cursor.moveToNext()) {
+                        String[] idArgs = new String[]{Long.toString(cursor.getLong(0))};
+                        weatherDeleted += db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?", idArgs);
+                        db.delete(WeatherContract.SyncJournalEntry.TABLE_NAME,
+                                WeatherContract.SyncJournalEntry.COLUMN_LOCATION_SETTING + " = ?",
+                                new String[]{cursor.getString(1)});
+                        db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                                WeatherContract.LocationEntry._ID + " = ?", idArgs);
+                    }
+                    deleteOrphanedHistory(db);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                mLocationIdCache.clear();
+            }
+        } finally {
+            cursor.close();
+        }
+        getContext().getContentResolver().notifyChange(
+                WeatherContract.LocationEntry.CONTENT_URI, null);
+        return weatherDeleted;
+    }
+
+    /**
+     * Applies the retention policy of every location to the weather table.  Rows are deleted
+     * in batches of {@link #RETENTION_BATCH_SIZE}, each in its own transaction, so readers are
+     * never blocked behind the whole pass.
+     *
+     * @return the number of weather rows deleted
+     */
+    private int deleteExpiredWeather(SQLiteDatabase db) {
+        String today = Long.toString(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        String[] selectionArgs = new String[]{today, today};
+        int totalDeleted = 0;
+        int rowsDeleted;
+        do {
+            rowsDeleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                    sExpiredWeatherSelection, selectionArgs);
+            totalDeleted += rowsDeleted;
+        } while (rowsDeleted == RETENTION_BATCH_SIZE);
+        return totalDeleted;
+    }
+
+    /**
+     * Drops archived days, and the rollups starting on them, once they are older than
+     * {@link #ARCHIVE_MILLIS}.
+     */
+    private void deleteExpiredHistory(SQLiteDatabase db) {
+        String[] horizon = new String[]{
+                Long.toString(System.currentTimeMillis() - ARCHIVE_MILLIS)};
+        db.delete(WeatherContract.ArchiveEntry.TABLE_NAME,
+                WeatherContract.ArchiveEntry.COLUMN_DATE + " < ?", horizon);
+        db.delete(WeatherContract.AggregateEntry.TABLE_NAME,
+                WeatherContract.AggregateEntry.COLUMN_PERIOD_START + " < ?", horizon);
+    }
+
+    private void deleteOrphanedHistory(SQLiteDatabase db) {
+        final String orphanedSelection = " NOT IN (SELECT " +
+                WeatherContract.LocationEntry._ID + " FROM " +
+                WeatherContract.LocationEntry.TABLE_NAME + ")";
+        db.delete(WeatherContract.ArchiveEntry.TABLE_NAME,
+                WeatherContract.ArchiveEntry.COLUMN_LOC_KEY + orphanedSelection, null);
+        db.delete(WeatherContract.AggregateEntry.TABLE_NAME,
+                WeatherContract.AggregateEntry.COLUMN_LOC_KEY + orphanedSelection, null);
+    }
+
+    /**
+     * Refreshes the query planner statistics and truncates the free pages off the database
+     * file.  Must not be called inside a transaction.
+     */
+    private void compactDatabase(SQLiteDatabase db) {
+        File databaseFile = getContext().getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        long sizeBefore = databaseFile.length();
+
+        if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+            // auto_vacuum only changes with a full VACUUM, and the database is never created
+            // with it, so the first compaction switches it to incremental vacuum
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } else {
+            Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+            // the vacuum runs as the rows are stepped through
+            cursor.getCount();
+            cursor.close();
+        }
+        db.execSQL("ANALYZE");
+
+        Log.d(LOG_TAG, "Compacted " + WeatherDbHelper.DATABASE_NAME + " from " + sizeBefore +
+                " to " + databaseFile.length() + " bytes");
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -289,6 +830,17 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    private void addCoordBucket(ContentValues values) {
+        // the bucket follows the coordinates, so it is only set when both of them are
+        if (values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LAT) &&
+                values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LONG)) {
+            values.put(WeatherContract.LocationEntry.COLUMN_COORD_BUCKET,
+                    WeatherContract.LocationEntry.getCoordBucket(
+                            values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                            values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG)));
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -303,8 +855,20 @@ public class WeatherProvider extends ContentProvider {
                         selectionArgs);
                 break;
             case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                addCoordBucket(values);
+                synchronized (mLocationIdCache) {
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    // the location setting of a cached row may have changed
+                    if (values.containsKey(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)) {
+                        mLocationIdCache.clear();
+                    }
+                }
+                break;
+            case SYNC_JOURNAL:
+                rowsUpdated = db.update(WeatherContract.SyncJournalEntry.TABLE_NAME, values,
+                        selection, selectionArgs);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -323,25 +887,96 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                // location id -> {first date, last date} of the days archived for the location
+                HashMap<Long, long[]> archivedRanges = new HashMap<Long, long[]>();
+                Calendar calendar = Calendar.getInstance();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
+                            archiveWeather(db, value, calendar, archivedRanges);
                         }
                     }
+                    for (Map.Entry<Long, long[]> range : archivedRanges.entrySet()) {
+                        updateRollups(db, range.getKey(), range.getValue(), calendar);
+                    }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                if (!archivedRanges.isEmpty()) {
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.AggregateEntry.CONTENT_URI, null);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Copies a weather row into the archive, replacing what was archived for the same day, and
+     * widens the range of days whose rollups need recomputing.
+     */
+    private void archiveWeather(SQLiteDatabase db, ContentValues weatherValues,
+                                Calendar calendar, HashMap<Long, long[]> archivedRanges) {
+        long locationId = weatherValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        long date = weatherValues.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+
+        ContentValues archiveValues = new ContentValues();
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_LOC_KEY, locationId);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_DATE, date);
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_WEEK_START,
+                getWeekStart(calendar, date));
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_MONTH_START,
+                getMonthStart(calendar, date));
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_WEATHER_ID,
+                weatherValues.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_MIN_TEMP,
+                weatherValues.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        archiveValues.put(WeatherContract.ArchiveEntry.COLUMN_MAX_TEMP,
+                weatherValues.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        db.insert(WeatherContract.ArchiveEntry.TABLE_NAME, null, archiveValues);
+
+        long[] range = archivedRanges.get(locationId);
+        if (null == range) {
+            archivedRanges.put(locationId, new long[]{date, date});
+        } else {
+            range[0] = Math.min(range[0], date);
+            range[1] = Math.max(range[1], date);
+        }
+    }
+
+    /**
+     * Recomputes the weekly and monthly rollups of a location for the weeks and months that
+     * overlap the range of archived days.  Only those partitions of the archive are read.
+     */
+    private void updateRollups(SQLiteDatabase db, long locationId, long[] range,
+                               Calendar calendar) {
+        db.execSQL(sWeeklyRollupSql, new Object[]{
+                locationId, getWeekStart(calendar, range[0]), range[1]});
+        db.execSQL(sMonthlyRollupSql, new Object[]{
+                locationId, getMonthStart(calendar, range[0]), range[1]});
+    }
+
+    // Both take and return dates normalized to the start of the local day
+    private static long getWeekStart(Calendar calendar, long date) {
+        calendar.setTimeInMillis(date);
+        int daysIntoWeek =
+                (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+        calendar.add(Calendar.DAY_OF_MONTH, -daysIntoWeek);
+        return calendar.getTimeInMillis();
+    }
+
+    private static long getMonthStart(Calendar calendar, long date) {
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fetches the forecast of a location the user is still typing, so that it is already there when
+ * they confirm it.  Once the candidate has stopped changing for a moment its forecast is fetched
+ * and staged in the sync journal, as a fetched but uncommitted run.  The sync that follows the
+ * change of location then commits it from the journal instead of going to the network.
+ * <p>
+ * A fetch still running for a candidate that changed is canceled, and responses staged for
+ * candidates the user didn't pick are discarded when editing finishes.  Must be used from the
+ * main thread.
+ */
+public class ForecastPrefetcher {
+    private static final String LOG_TAG = ForecastPrefetcher.class.getSimpleName();
+
+    // How long the candidate has to stay the same before it is fetched
+    private static final long DEBOUNCE_MILLIS = 800;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private String mCandidate;
+    private Fetch mFetch;
+    // location setting -> payload hash of the responses staged so far
+    private final Map<String, String> mStaged = new HashMap<String, String>();
+
+    private final Runnable mStartFetch = new Runnable() {
+        @Override
+        public void run() {
+            mFetch = new Fetch(mCandidate);
+            new Thread(mFetch, LOG_TAG).start();
+        }
+    };
+
+    public ForecastPrefetcher(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Sets the location being typed, or null if there is no usable one.
+     */
+    public void setCandidate(String locationSetting) {
+        // Staged under the key the sync will look the location up by
+        if (null != locationSetting) {
+            locationSetting = Utility.getLocationKey(mContext, locationSetting);
+        }
+        if (null == locationSetting ? null == mCandidate : locationSetting.equals(mCandidate)) {
+            return;
+        }
+        mCandidate = locationSetting;
+        mHandler.removeCallbacks(mStartFetch);
+        cancelFetch();
+        if (null != locationSetting) {
+            mHandler.postDelayed(mStartFetch, DEBOUNCE_MILLIS);
+        }
+    }
+
+    /**
+     * Stops prefetching, and discards what was staged for anything but the chosen location.
+     *
+     * @param chosenLocation the location the user confirmed, or null if they canceled
+     */
+    public void finish(String chosenLocation) {
+        mHandler.removeCallbacks(mStartFetch);
+        // The sync the change of location triggers fetches the forecast itself
+        cancelFetch();
+        mCandidate = null;
+        final Map<String, String> abandoned;
+        synchronized (mStaged) {
+            if (null != chosenLocation) {
+                mStaged.remove(Utility.getLocationKey(mContext, chosenLocation));
+            }
+            abandoned = new HashMap<String, String>(mStaged);
+            mStaged.clear();
+        }
+        if (abandoned.isEmpty()) {
+            return;
+        }
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<String, String> staged : abandoned.entrySet()) {
+                    SyncJournal.discardFetched(mContext, staged.getKey(), staged.getValue());
+                }
+            }
+        }, LOG_TAG).start();
+    }
+
+    private void cancelFetch() {
+        if (null != mFetch) {
+            mFetch.cancel();
+            mFetch = null;
+        }
+    }
+
+    /**
+     * Fetches and stages the forecast of one candidate, unless canceled first.
+     */
+    private class Fetch implements Runnable {
+        private final String mLocationSetting;
+        private volatile boolean mCanceled;
+        private volatile HttpURLConnection mConnection;
+
+        Fetch(String locationSetting) {
+            mLocationSetting = locationSetting;
+        }
+
+        void cancel() {
+            mCanceled = true;
+            HttpURLConnection connection = mConnection;
+            if (null != connection) {
+                // Makes the blocked read on the fetch thread fail
+                connection.disconnect();
+            }
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            // A stored forecast that is still fresh is shown at once anyway, and a location that
+            // the server didn't find recently has no forecast to fetch
+            if (!Utility.isNetworkAvailable(mContext)
+                    || Utility.isLocationInvalid(mContext, mLocationSetting)
+                    || Utility.isLocationFresh(mContext, mLocationSetting)) {
+                return;
+            }
+            String payload = null;
+            BufferedReader reader = null;
+            try {
+                HttpURLConnection connection = (HttpURLConnection)
+                        SunshineSyncAdapter.buildForecastUrl(mContext, mLocationSetting)
+                                .openConnection();
+                mConnection = connection;
+                if (mCanceled) {
+                    return;
+                }
+                int responseCode = connection.getResponseCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND) {
+                    // Confirming this location now fails without a sync
+                    Utility.addLocationNotFound(mContext, mLocationSetting);
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    return;
+                }
+                reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+                StringBuilder buffer = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    buffer.append(line).append('\n');
+                }
+                payload = buffer.toString();
+            } catch (IOException e) {
+                if (!mCanceled) {
+                    Log.d(LOG_TAG, "Prefetching " + mLocationSetting + " failed", e);
+                }
+            } finally {
+                if (null != mConnection) {
+                    mConnection.disconnect();
+                }
+                if (reader != null) {
+                    try {
+                        reader.close();
+                    } catch (final IOException e) {
+                        Log.e(LOG_TAG, "Error closing stream", e);
+                    }
+                }
+            }
+            if (null == payload || payload.length() == 0) {
+                return;
+            }
+            // Checked under the lock, so that finish() either sees the staged response or
+            // this fetch sees that it was canceled
+            synchronized (mStaged) {
+                if (mCanceled) {
+                    return;
+                }
+                SyncJournal.recordFetched(mContext, mLocationSetting, payload);
+                mStaged.put(mLocationSetting, SyncJournal.hashPayload(payload));
+            }
+            Log.d(LOG_TAG, "Prefetched the forecast of " + mLocationSetting);
+        }
+    }
+}
@@ -6,12 +6,14 @@ import android.annotation.SuppressLint;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
+import android.content.AsyncQueryHandler;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -20,13 +22,13 @@ import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
-import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
@@ -34,7 +36,12 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.ArtPackService;
+import com.example.android.sunshine.app.data.CityIndex;
+import com.example.android.sunshine.app.data.DayIndex;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -56,6 +63,7 @@ import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Vector;
 import java.util.concurrent.ExecutionException;
@@ -68,10 +76,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
+    // A fetched forecast stays fresh until the earliest time the next periodic sync may run,
+    // so a periodic sync never skips itself because of the previous one.
+    static final long FRESHNESS_MILLIS = (SYNC_INTERVAL - SYNC_FLEXTIME) * 1000L;
+    // How close a stored location has to be for a new one to share its forecast
+    private static final double NEARBY_RADIUS_KM = 10;
+    // Recorded with every fetched forecast, so stored data can be told apart if the source changes
+    private static final String SOURCE_VERSION = "owm-2.5-daily";
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
 
+    private static final String sLocationSettingSelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?";
+
     private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
@@ -136,6 +154,39 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         Log.d(LOG_TAG, "Starting sync");
         String locationQuery = Utility.getPreferredLocation(getContext());
 
+        if (Utility.isLocationInvalid(getContext(), locationQuery)) {
+            Log.d(LOG_TAG, locationQuery + " wasn't found recently, skipping sync");
+            setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+            return;
+        }
+        locationQuery = shareNearbyLocation(getContext(), locationQuery);
+
+        // If the previous run for this location was interrupted, or its forecast was prefetched
+        // while the location was being edited, finish it first
+        boolean committed = resumeInterruptedSync(locationQuery);
+
+        // The preferred location is in use, so maintenance must not evict it
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                buildAccessedValues(), sLocationSettingSelection, new String[]{locationQuery});
+
+        // Background syncs double as the maintenance window for the database
+        if (!extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)) {
+            compactDatabaseIfDue();
+            // Picks up art packs selected before they were downloaded, or whose download failed
+            if (!Utility.usingLocalGraphics(getContext())) {
+                ArtPackService.startInstall(getContext());
+            }
+        }
+
+        // Periodic syncs have nothing to do while the stored forecast is still fresh.  Syncs the
+        // user asked for always go to the network, unless the forecast was just committed from
+        // the journal.
+        if ((committed || !extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)) &&
+                Utility.isLocationFresh(getContext(), locationQuery)) {
+            Log.d(LOG_TAG, "Forecast for " + locationQuery + " is still fresh, skipping sync");
+            return;
+        }
+
         // These two need to be declared outside the try/catch
         // so that they can be closed in the finally block.
         HttpURLConnection urlConnection = null;
@@ -144,31 +195,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         // Will contain the raw JSON response as a string.
         String forecastJsonStr = null;
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
-
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
+            URL url = buildForecastUrl(getContext(), locationQuery);
 
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
@@ -198,6 +226,19 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 return;
             }
             forecastJsonStr = buffer.toString();
+
+            // If the server sent exactly what we already stored and fanned out, there's nothing
+            // to write; the forecast is just confirmed to be fresh.
+            SyncJournal.Run lastRun = SyncJournal.getLastRun(getContext(), locationQuery);
+            if (null != lastRun && lastRun.phase == SyncJournalEntry.PHASE_FANNED_OUT &&
+                    lastRun.payloadHash.equals(SyncJournal.hashPayload(forecastJsonStr))) {
+                Log.d(LOG_TAG, "Forecast for " + locationQuery + " is unchanged");
+                updateLocationFreshness(locationQuery);
+                setLocationStatus(getContext(), LOCATION_STATUS_OK);
+                return;
+            }
+
+            SyncJournal.recordFetched(getContext(), locationQuery, forecastJsonStr);
             getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
@@ -223,6 +264,47 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         return;
     }
 
+    /**
+     * @param locationQuery The location string used to request updates from the server.
+     * @return the OpenWeatherMap url of the location's daily forecast.  Cities the bundled city
+     * index knows are asked for by id, which the server doesn't have to search for.
+     */
+    static URL buildForecastUrl(Context context, String locationQuery)
+            throws MalformedURLException {
+        String format = "json";
+        String units = "metric";
+        int numDays = 14;
+
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String FORECAST_BASE_URL =
+                "http://api.openweathermap.org/data/2.5/forecast/daily?";
+        final String QUERY_PARAM = "q";
+        final String ID_PARAM = "id";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        CityIndex cityIndex = CityIndex.get(context);
+        CityIndex.City city = null == cityIndex ? null : cityIndex.resolve(locationQuery);
+        Uri.Builder builder = Uri.parse(FORECAST_BASE_URL).buildUpon();
+        if (null != city) {
+            builder.appendQueryParameter(ID_PARAM, Integer.toString(city.id));
+        } else {
+            builder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+        Uri builtUri = builder
+                .appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+
+        return new URL(builtUri.toString());
+    }
+
     /**
      * Take the String representing the complete forecast in JSON Format and
      * pull out the data we need to construct the Strings needed for the wireframes.
@@ -280,9 +362,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     case HttpURLConnection.HTTP_OK:
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
+                        Utility.addLocationNotFound(getContext(), locationSetting);
+                        SyncJournal.discard(getContext(), locationSetting);
                         setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
                         return;
                     default:
+                        SyncJournal.discard(getContext(), locationSetting);
                         setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
                         return;
                 }
@@ -310,14 +395,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // current day, we're going to take advantage of that to get a nice
             // normalized UTC date for all of our weather.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
             // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            int julianStartDay = DayIndex.getToday();
 
             for (int i = 0; i < weatherArray.length(); i++) {
                 // These are the values that will be collected.
@@ -336,8 +415,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 // Get the JSON object representing the day
                 JSONObject dayForecast = weatherArray.getJSONObject(i);
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay + i);
+                // Each day is stored as the local midnight that starts it
+                dateTime = DayIndex.getStartOfDay(julianStartDay + i);
 
                 pressure = dayForecast.getDouble(OWM_PRESSURE);
                 humidity = dayForecast.getInt(OWM_HUMIDITY);
@@ -384,16 +463,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
                 getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+                updateLocationFreshness(locationSetting);
+                if (locationSetting.equals(Utility.getPreferredLocation(getContext()))) {
+                    ForecastSnapshot.write(getContext(), locationSetting,
+                            cityLatitude, cityLongitude, cvArray);
+                }
 
                 // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
-
-                updateWidgets();
-                updateWearWatchFace(highTempToday, lowTempToday, weatherIdToday);
-                updateMuzei();
-                notifyWeather();
+                getContext().getContentResolver().delete(
+                        WeatherContract.MaintenanceEntry.CONTENT_URI, null, null);
+                SyncJournal.recordCommitted(getContext(), locationSetting);
+
+                fanOut(locationSetting, highTempToday, lowTempToday, weatherIdToday);
+            } else {
+                SyncJournal.discard(getContext(), locationSetting);
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
             setLocationStatus(getContext(), LOCATION_STATUS_OK);
@@ -401,10 +484,129 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
+            SyncJournal.discard(getContext(), locationSetting);
             setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
         }
     }
 
+    /**
+     * Finishes the previous sync run of the location if the process died part way through it:
+     * a fetched but uncommitted response is committed from the journal, and committed data that
+     * was never fanned out is sent to widgets, wear, Muzei and the notification.  Responses
+     * staged by {@link ForecastPrefetcher} are committed the same way.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @return true if a fetched response was committed
+     */
+    boolean resumeInterruptedSync(String locationSetting) {
+        SyncJournal.Run lastRun = SyncJournal.getLastRun(getContext(), locationSetting);
+        if (null == lastRun) {
+            return false;
+        }
+        switch (lastRun.phase) {
+            case SyncJournalEntry.PHASE_FETCHED:
+                if (null == lastRun.payload) {
+                    break;
+                }
+                // Committing would mark the location fresh, which an old response isn't
+                if (System.currentTimeMillis() - lastRun.updated > FRESHNESS_MILLIS) {
+                    Log.d(LOG_TAG, "Discarding outdated fetch of " + locationSetting);
+                    SyncJournal.discard(getContext(), locationSetting);
+                    break;
+                }
+                Log.d(LOG_TAG, "Committing fetched forecast of " + locationSetting);
+                try {
+                    getWeatherDataFromJson(lastRun.payload, locationSetting);
+                    return true;
+                } catch (JSONException e) {
+                    Log.e(LOG_TAG, e.getMessage(), e);
+                    SyncJournal.discard(getContext(), locationSetting);
+                }
+                break;
+            case SyncJournalEntry.PHASE_COMMITTED: {
+                Log.d(LOG_TAG, "Fanning out interrupted sync of " + locationSetting);
+                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, System.currentTimeMillis());
+                Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                        NOTIFY_WEATHER_PROJECTION, null, null, null);
+                if (null == cursor) {
+                    break;
+                }
+                if (cursor.moveToFirst()) {
+                    fanOut(locationSetting, cursor.getDouble(INDEX_MAX_TEMP),
+                            cursor.getDouble(INDEX_MIN_TEMP), cursor.getInt(INDEX_WEATHER_ID));
+                } else {
+                    // The committed data is already out of date; the next fetch replaces it
+                    SyncJournal.discard(getContext(), locationSetting);
+                }
+                cursor.close();
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells everything that shows the forecast outside of the app that new data is available.
+     */
+    private void fanOut(String locationSetting, double highToday, double lowToday,
+                        int weatherIdToday) {
+        updateWidgets();
+        updateWearWatchFace(highToday, lowToday, weatherIdToday);
+        updateMuzei();
+        notifyWeather();
+        SyncJournal.recordFannedOut(getContext(), locationSetting);
+    }
+
+    /**
+     * Compacts the database at most once a day, and only while the device is charging, since a
+     * vacuum rewrites a good part of the database file.
+     */
+    private void compactDatabaseIfDue() {
+        Context context = getContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String lastMaintenanceKey = context.getString(R.string.pref_last_maintenance);
+        if (System.currentTimeMillis() - prefs.getLong(lastMaintenanceKey, 0) < DAY_IN_MILLIS) {
+            return;
+        }
+
+        // ACTION_BATTERY_CHANGED is sticky, so this returns the current state right away
+        Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (null == batteryStatus ||
+                batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) == 0) {
+            return;
+        }
+
+        context.getContentResolver().delete(
+                WeatherContract.MaintenanceEntry.buildCompactUri(), null, null);
+        prefs.edit().putLong(lastMaintenanceKey, System.currentTimeMillis()).commit();
+    }
+
+    /**
+     * Records that the forecast for the given location has just been fetched.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     */
+    private void updateLocationFreshness(String locationSetting) {
+        long now = System.currentTimeMillis();
+        ContentValues freshnessValues = new ContentValues();
+        freshnessValues.put(WeatherContract.LocationEntry.COLUMN_LAST_SYNCED, now);
+        freshnessValues.put(WeatherContract.LocationEntry.COLUMN_EXPIRES_AT, now + FRESHNESS_MILLIS);
+        freshnessValues.put(WeatherContract.LocationEntry.COLUMN_SOURCE_VERSION, SOURCE_VERSION);
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                freshnessValues,
+                sLocationSettingSelection,
+                new String[]{locationSetting});
+    }
+
+    private static ContentValues buildAccessedValues() {
+        ContentValues accessedValues = new ContentValues();
+        accessedValues.put(WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED,
+                System.currentTimeMillis());
+        return accessedValues;
+    }
+
     private void updateWidgets() {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
@@ -447,11 +649,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
 
-        if (displayNotifications) {
+        if (Utility.areNotificationsEnabled(context)) {
 
             String lastNotificationKey = context.getString(R.string.pref_last_notification);
             long lastSync = prefs.getLong(lastNotificationKey, 0);
@@ -560,44 +759,70 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
      * @return the row ID of the added location.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
+        // Now that the content provider is set up, inserting rows of data is pretty simple.
+        // First create a ContentValues object to hold the data you want to insert.
+        ContentValues locationValues = new ContentValues();
+
+        // Then add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LAST_ACCESSED,
+                System.currentTimeMillis());
+
+        // The upsert uri only inserts the location if it isn't stored yet, and hands back the
+        // row either way, so there's no need to query for it first.
+        Uri locationUri = getContext().getContentResolver().insert(
+                WeatherContract.LocationEntry.buildLocationUpsertUri(),
+                locationValues
+        );
+
+        // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
+        return ContentUris.parseId(locationUri);
+    }
 
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
+    /**
+     * Looks for a stored location within NEARBY_RADIUS_KM of where the city index places the
+     * location, and if there is one, makes the location share its forecast from now on rather
+     * than fetch and store one of its own.  A location that is stored already is usually its own
+     * nearest location.  Queries and writes, so it is only called from the sync.
+     *
+     * @param locationSetting the key of the preferred location
+     * @return the location setting to sync
+     */
+    private static String shareNearbyLocation(Context context, String locationSetting) {
+        CityIndex cityIndex = CityIndex.get(context);
+        CityIndex.City city = null == cityIndex ? null : cityIndex.resolve(locationSetting);
+        if (null == city) {
+            return locationSetting;
+        }
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.buildNearestLocationUri(
+                        city.latitude, city.longitude, NEARBY_RADIUS_KM),
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null,
+                null,
+                null);
+        if (null == cursor) {
+            return locationSetting;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return locationSetting;
+            }
+            String nearby = cursor.getString(0);
+            if (!nearby.equals(locationSetting)) {
+                Log.d(LOG_TAG, locationSetting + " shares the forecast of " + nearby);
+                Utility.addLocationAlias(context, locationSetting, nearby);
+                // A forecast prefetched for the location will never be committed now
+                SyncJournal.discardFetched(context, locationSetting);
+            }
+            return nearby;
+        } finally {
+            cursor.close();
         }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
     }
 
     /**
@@ -632,6 +857,70 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter sync immediately, unless the forecast stored for the
+     * preferred location is still fresh.
+     *
+     * @param context The context used to access the account service
+     * @return true if a sync was requested
+     */
+    public static boolean syncImmediatelyIfStale(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        if (Utility.isLocationInvalid(context, locationSetting)) {
+            // A location that can't be found isn't worth a round trip to the server
+            setLocationStatusAsync(context, LOCATION_STATUS_INVALID);
+            return false;
+        }
+        if (Utility.isLocationFresh(context, locationSetting)) {
+            markLocationAccessed(context, locationSetting);
+            // Nothing will be fetched, so the status of the stored location stands
+            setLocationStatusAsync(context, LOCATION_STATUS_OK);
+            return false;
+        }
+        syncImmediately(context);
+        return true;
+    }
+
+    /**
+     * Like {@link #syncImmediatelyIfStale}, but the freshness of the stored forecast is read in
+     * the background, so that it can be called each time the forecast is shown.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void syncIfStaleAsync(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final String locationSetting = Utility.getPreferredLocation(appContext);
+        if (Utility.isLocationInvalid(appContext, locationSetting)) {
+            return;
+        }
+        new AsyncQueryHandler(appContext.getContentResolver()) {
+            @Override
+            protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
+                boolean fresh = false;
+                if (null != cursor) {
+                    fresh = cursor.moveToFirst() && cursor.getInt(0) != 0;
+                    cursor.close();
+                }
+                if (fresh) {
+                    markLocationAccessed(appContext, locationSetting);
+                } else {
+                    syncImmediately(appContext);
+                }
+            }
+        }.startQuery(0, null,
+                WeatherContract.LocationEntry.buildLocationFreshnessUri(locationSetting),
+                new String[]{WeatherContract.LocationEntry.COLUMN_IS_FRESH}, null, null, null);
+    }
+
+    // Keeps the location from being evicted as least recently used.  A sync would do this too;
+    // without one, do it in the background rather than write on the UI thread.
+    private static void markLocationAccessed(Context context, String locationSetting) {
+        new AsyncQueryHandler(context.getContentResolver()) {
+        }.startUpdate(0, null, WeatherContract.LocationEntry.CONTENT_URI,
+                buildAccessedValues(), sLocationSettingSelection,
+                new String[]{locationSetting});
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -705,4 +994,18 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
         spe.commit();
     }
+
+    /**
+     * Sets the location status into shared preference like {@link #setLocationStatus}, but
+     * writes it to disk in the background, so that it can be called from the UI thread.
+     *
+     * @param c              Context to get the PreferenceManager from.
+     * @param locationStatus The IntDef value to set
+     */
+    static private void setLocationStatusAsync(Context c, @LocationStatus int locationStatus) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
+        SharedPreferences.Editor spe = sp.edit();
+        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
+        spe.apply();
+    }
 }
\ No newline at end of file
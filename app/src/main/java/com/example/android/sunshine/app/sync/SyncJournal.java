@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reads and advances the sync journal, which remembers how far the last sync run of each
+ * location got.  If the process dies part way through a sync, the next run can pick up from the
+ * last completed phase instead of fetching the forecast again.
+ */
+class SyncJournal {
+    private static final String[] JOURNAL_PROJECTION = new String[]{
+            SyncJournalEntry.COLUMN_PHASE,
+            SyncJournalEntry.COLUMN_PAYLOAD_HASH,
+            SyncJournalEntry.COLUMN_PAYLOAD,
+            SyncJournalEntry.COLUMN_UPDATED
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_PHASE = 0;
+    private static final int INDEX_PAYLOAD_HASH = 1;
+    private static final int INDEX_PAYLOAD = 2;
+    private static final int INDEX_UPDATED = 3;
+
+    private static final String sLocationSettingSelection =
+            SyncJournalEntry.COLUMN_LOCATION_SETTING + " = ?";
+
+    /**
+     * The last recorded state of a location's sync run.
+     */
+    static class Run {
+        final int phase;
+        final String payloadHash;
+        // null once the payload has been committed
+        final String payload;
+        // when the run last advanced, in milliseconds since the epoch
+        final long updated;
+
+        Run(int phase, String payloadHash, String payload, long updated) {
+            this.phase = phase;
+            this.payloadHash = payloadHash;
+            this.payload = payload;
+            this.updated = updated;
+        }
+    }
+
+    private SyncJournal() {
+    }
+
+    /**
+     * @return the last sync run recorded for the location, or null if there isn't one
+     */
+    static Run getLastRun(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                SyncJournalEntry.CONTENT_URI,
+                JOURNAL_PROJECTION,
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null);
+        if (null == cursor) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Run(cursor.getInt(INDEX_PHASE),
+                    cursor.getString(INDEX_PAYLOAD_HASH),
+                    cursor.getString(INDEX_PAYLOAD),
+                    cursor.getLong(INDEX_UPDATED));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Starts a new run for the location, replacing the previous one, and keeps the payload
+     * around until it has been committed.
+     */
+    static void recordFetched(Context context, String locationSetting, String payload) {
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(SyncJournalEntry.COLUMN_PHASE, SyncJournalEntry.PHASE_FETCHED);
+        values.put(SyncJournalEntry.COLUMN_PAYLOAD_HASH, hashPayload(payload));
+        values.put(SyncJournalEntry.COLUMN_PAYLOAD, payload);
+        values.put(SyncJournalEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        context.getContentResolver().insert(SyncJournalEntry.CONTENT_URI, values);
+    }
+
+    /**
+     * Records that the payload has been written to the weather table.  The payload itself is no
+     * longer needed after this, so it is dropped.
+     */
+    static void recordCommitted(Context context, String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_PHASE, SyncJournalEntry.PHASE_COMMITTED);
+        values.putNull(SyncJournalEntry.COLUMN_PAYLOAD);
+        values.put(SyncJournalEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        context.getContentResolver().update(SyncJournalEntry.CONTENT_URI, values,
+                sLocationSettingSelection, new String[]{locationSetting});
+    }
+
+    /**
+     * Records that widgets, wear, Muzei and the notification have been updated.
+     */
+    static void recordFannedOut(Context context, String locationSetting) {
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_PHASE, SyncJournalEntry.PHASE_FANNED_OUT);
+        values.put(SyncJournalEntry.COLUMN_UPDATED, System.currentTimeMillis());
+        context.getContentResolver().update(SyncJournalEntry.CONTENT_URI, values,
+                sLocationSettingSelection, new String[]{locationSetting});
+    }
+
+    /**
+     * Forgets the location's run, for responses that turned out to have nothing to commit.
+     */
+    static void discard(Context context, String locationSetting) {
+        context.getContentResolver().delete(SyncJournalEntry.CONTENT_URI,
+                sLocationSettingSelection, new String[]{locationSetting});
+    }
+
+    /**
+     * Forgets a fetched payload that was never committed, for prefetched responses the user
+     * didn't pick after all.  Leaves the run alone if it has moved on since.
+     */
+    static void discardFetched(Context context, String locationSetting, String payloadHash) {
+        context.getContentResolver().delete(SyncJournalEntry.CONTENT_URI,
+                sLocationSettingSelection + " AND " + SyncJournalEntry.COLUMN_PHASE + " = ? AND "
+                        + SyncJournalEntry.COLUMN_PAYLOAD_HASH + " = ?",
+                new String[]{locationSetting, Integer.toString(SyncJournalEntry.PHASE_FETCHED),
+                        payloadHash});
+    }
+
+    /**
+     * Forgets whatever payload was fetched for the location and never committed, for
+     * locations that won't be synced under their own setting any more.
+     */
+    static void discardFetched(Context context, String locationSetting) {
+        context.getContentResolver().delete(SyncJournalEntry.CONTENT_URI,
+                sLocationSettingSelection + " AND " + SyncJournalEntry.COLUMN_PHASE + " = ?",
+                new String[]{locationSetting, Integer.toString(SyncJournalEntry.PHASE_FETCHED)});
+    }
+
+    // A matching hash skips writing the forecast, so it has to be collision resistant
+    static String hashPayload(String payload) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(payload.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // SHA-1 and UTF-8 are always supported
+            throw new AssertionError(e);
+        }
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.common;
+
+import java.util.Arrays;
+
+/**
+ * Maps the weather condition ids returned by OpenWeatherMap to what Sunshine shows for them,
+ * using tables indexed by the condition id.
+ * <p>
+ * Every condition with an icon belongs to one of the KIND_ constants.  Icons and art are
+ * resources of the app and the watch face, so each of them maps kinds to its own drawables;
+ * the kind's art key names the art in the online art packs.
+ * <p>
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int KIND_UNKNOWN = -1;
+    public static final int KIND_STORM = 0;
+    public static final int KIND_LIGHT_RAIN = 1;
+    public static final int KIND_RAIN = 2;
+    public static final int KIND_SNOW = 3;
+    public static final int KIND_FOG = 4;
+    public static final int KIND_CLEAR = 5;
+    public static final int KIND_LIGHT_CLOUDS = 6;
+    public static final int KIND_CLOUDS = 7;
+    public static final int KIND_COUNT = 8;
+
+    // these must match the kinds above
+    private static final String[] ART_KEYS = new String[]{
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private static final String[] IMAGE_URLS = new String[]{
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+
+    // Tornadoes get the storm icon, but a picture of their own
+    private static final String TORNADO_IMAGE_URL =
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg";
+    private static final int TORNADO = 781;
+
+    // The tables cover every id from MIN_ID to MAX_ID
+    private static final int MIN_ID = 200;
+    private static final int MAX_ID = 962;
+
+    // condition id - MIN_ID -> kind, or KIND_UNKNOWN
+    private static final byte[] sKinds = new byte[MAX_ID - MIN_ID + 1];
+    // condition id - MIN_ID -> string resource id, or 0
+    private static final int[] sStringIds = new int[MAX_ID - MIN_ID + 1];
+
+    static {
+        Arrays.fill(sKinds, (byte) KIND_UNKNOWN);
+        setKind(200, 232, KIND_STORM);
+        setKind(300, 321, KIND_LIGHT_RAIN);
+        setKind(500, 504, KIND_RAIN);
+        setKind(511, 511, KIND_SNOW);
+        setKind(520, 531, KIND_RAIN);
+        setKind(600, 622, KIND_SNOW);
+        setKind(701, 761, KIND_FOG);
+        setKind(781, 781, KIND_STORM);
+        setKind(800, 800, KIND_CLEAR);
+        setKind(801, 801, KIND_LIGHT_CLOUDS);
+        setKind(802, 804, KIND_CLOUDS);
+
+        setString(200, 232, R.string.condition_2xx);
+        setString(300, 321, R.string.condition_3xx);
+        setString(500, R.string.condition_500);
+        setString(501, R.string.condition_501);
+        setString(502, R.string.condition_502);
+        setString(503, R.string.condition_503);
+        setString(504, R.string.condition_504);
+        setString(511, R.string.condition_511);
+        setString(520, R.string.condition_520);
+        setString(521, R.string.condition_521);
+        setString(522, R.string.condition_522);
+        setString(531, R.string.condition_531);
+        setString(600, R.string.condition_600);
+        setString(601, R.string.condition_601);
+        setString(602, R.string.condition_602);
+        setString(611, R.string.condition_611);
+        setString(612, R.string.condition_612);
+        setString(615, R.string.condition_615);
+        setString(616, R.string.condition_616);
+        setString(620, R.string.condition_620);
+        setString(621, R.string.condition_621);
+        setString(622, R.string.condition_622);
+        setString(701, R.string.condition_701);
+        setString(711, R.string.condition_711);
+        setString(721, R.string.condition_721);
+        setString(731, R.string.condition_731);
+        setString(741, R.string.condition_741);
+        setString(751, R.string.condition_751);
+        setString(761, R.string.condition_761);
+        setString(762, R.string.condition_762);
+        setString(771, R.string.condition_771);
+        setString(781, R.string.condition_781);
+        setString(800, R.string.condition_800);
+        setString(801, R.string.condition_801);
+        setString(802, R.string.condition_802);
+        setString(803, R.string.condition_803);
+        setString(804, R.string.condition_804);
+        setString(900, R.string.condition_900);
+        setString(901, R.string.condition_901);
+        setString(902, R.string.condition_902);
+        setString(903, R.string.condition_903);
+        setString(904, R.string.condition_904);
+        setString(905, R.string.condition_905);
+        setString(906, R.string.condition_906);
+        setString(951, R.string.condition_951);
+        setString(952, R.string.condition_952);
+        setString(953, R.string.condition_953);
+        setString(954, R.string.condition_954);
+        setString(955, R.string.condition_955);
+        setString(956, R.string.condition_956);
+        setString(957, R.string.condition_957);
+        setString(958, R.string.condition_958);
+        setString(959, R.string.condition_959);
+        setString(960, R.string.condition_960);
+        setString(961, R.string.condition_961);
+        setString(962, R.string.condition_962);
+    }
+
+    private static void setKind(int firstId, int lastId, int kind) {
+        for (int id = firstId; id <= lastId; id++) {
+            sKinds[id - MIN_ID] = (byte) kind;
+        }
+    }
+
+    private static void setString(int firstId, int lastId, int stringId) {
+        for (int id = firstId; id <= lastId; id++) {
+            sStringIds[id - MIN_ID] = stringId;
+        }
+    }
+
+    private static void setString(int id, int stringId) {
+        sStringIds[id - MIN_ID] = stringId;
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return one of the KIND_ constants, KIND_UNKNOWN if the condition has no icon
+     */
+    public static int getKind(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return KIND_UNKNOWN;
+        }
+        return sKinds[weatherId - MIN_ID];
+    }
+
+    /**
+     * @param kind one of the KIND_ constants, except KIND_UNKNOWN
+     * @return the name of the kind's art in the online art packs, e.g "light_rain"
+     */
+    public static String getArtKeyForKind(int kind) {
+        return ART_KEYS[kind];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the name of the condition's art in the online art packs. null if no relation is
+     * found.
+     */
+    public static String getArtKey(int weatherId) {
+        int kind = getKind(weatherId);
+        return kind == KIND_UNKNOWN ? null : ART_KEYS[kind];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return A string URL to an appropriate image or null if no mapping is found
+     */
+    public static String getImageUrl(int weatherId) {
+        if (weatherId == TORNADO) {
+            return TORNADO_IMAGE_URL;
+        }
+        int kind = getKind(weatherId);
+        return kind == KIND_UNKNOWN ? null : IMAGE_URLS[kind];
+    }
+
+    /**
+     * @param weatherId from OpenWeatherMap API response
+     * @return the string resource describing the condition, or 0 if there is none.  Unknown
+     * conditions are described by R.string.condition_unknown, formatted with the id.
+     */
+    public static int getStringResource(int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return 0;
+        }
+        return sStringIds[weatherId - MIN_ID];
+    }
+}